@@ -0,0 +1,72 @@
+package benchmarks;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the conversion of a synthetic genome-scale model, as a whole and for each kind of sbml element.
+ * Each step starts from an empty rdf model, the previous steps are not run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConvertorBenchmark {
+
+    static final String URI = "http://bench.sbml2rdf.org/synthetic";
+
+    /** number of species of the model */
+    @Param({"2000", "10000"})
+    public int species;
+
+    private org.sbml.jsbml.Model sbml;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        sbml = SyntheticModels.genomeScale(species).generate().getModel();
+    }
+
+    private Object convertor(Model rdf) {
+        return Sbml2Rdf.convertor(sbml, rdf, URI);
+    }
+
+    @Benchmark
+    public Model run() {
+        Model rdf = ModelFactory.createDefaultModel();
+        Sbml2Rdf.run(convertor(rdf));
+        return rdf;
+    }
+
+    @Benchmark
+    public Model convertCompartments() {
+        Model rdf = ModelFactory.createDefaultModel();
+        Sbml2Rdf.convertCompartments(convertor(rdf));
+        return rdf;
+    }
+
+    @Benchmark
+    public Model convertSpecies() {
+        Model rdf = ModelFactory.createDefaultModel();
+        Sbml2Rdf.convertSpecies(convertor(rdf));
+        return rdf;
+    }
+
+    @Benchmark
+    public Model convertReactions() {
+        Model rdf = ModelFactory.createDefaultModel();
+        Sbml2Rdf.convertReactions(convertor(rdf));
+        return rdf;
+    }
+
+    @Benchmark
+    public Model convertGenes() {
+        Model rdf = ModelFactory.createDefaultModel();
+        Sbml2Rdf.convertGenes(convertor(rdf));
+        return rdf;
+    }
+}
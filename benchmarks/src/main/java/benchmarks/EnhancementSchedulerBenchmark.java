@@ -0,0 +1,58 @@
+package benchmarks;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of all the enhancements of a converted synthetic model (compartment links, side compounds, metabolic links and
+ * their transitive closure), run one after the other on the model (1 thread) or concurrently on snapshots of the model
+ * (see EnhancementScheduler). Each invocation enhances a fresh copy of the converted model (the copy is not measured).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnhancementSchedulerBenchmark {
+
+    /** number of species of the model */
+    @Param({"2000", "10000"})
+    public int species;
+
+    /** implementation of the enhancements, see PropertyFiller.Engine */
+    @Param({"SPARQL", "INDEXED"})
+    public String engine;
+
+    /** maximum number of enhancements run concurrently, 1 for the sequential run */
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    private Model converted;
+    private Object pipeline;
+    private Model rdf;
+
+    @Setup(Level.Trial)
+    public void convert() {
+        SyntheticModels generator = SyntheticModels.genomeScale(species);
+        converted = ModelFactory.createDefaultModel();
+        Sbml2Rdf.run(Sbml2Rdf.convertor(generator.generate().getModel(), converted, ConvertorBenchmark.URI));
+        List<String> sideCompounds = generator.sideCompounds(Math.max(1, species / 300)); //~1% of the species
+        pipeline = Sbml2Rdf.enhancementPipeline(sideCompounds, 2, engine, threads);
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() {
+        rdf = ModelFactory.createDefaultModel().add(converted);
+    }
+
+    @Benchmark
+    public Model enhance() {
+        Sbml2Rdf.enhance(pipeline, rdf);
+        return rdf;
+    }
+}
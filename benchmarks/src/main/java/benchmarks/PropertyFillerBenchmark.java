@@ -0,0 +1,69 @@
+package benchmarks;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of each enhancement of a converted synthetic model, with both implementations. Each invocation enhances a
+ * fresh copy of the converted model (the copy is not measured). The number of compartments drives the cost of the
+ * compartment links, which are made between all the compartments of a metabolite.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PropertyFillerBenchmark {
+
+    /** number of species of the model */
+    @Param({"2000", "10000"})
+    public int species;
+
+    /** number of compartments the species are spread over, each metabolite being in all of them */
+    @Param({"3", "20", "100"})
+    public int compartments;
+
+    /** implementation of the enhancements, see PropertyFiller.Engine */
+    @Param({"SPARQL", "INDEXED"})
+    public String engine;
+
+    private Model converted;
+    private List<String> sideCompounds;
+    private Model rdf;
+
+    @Setup(Level.Trial)
+    public void convert() {
+        SyntheticModels generator = SyntheticModels.genomeScale(species, compartments);
+        converted = ModelFactory.createDefaultModel();
+        Sbml2Rdf.run(Sbml2Rdf.convertor(generator.generate().getModel(), converted, ConvertorBenchmark.URI));
+        sideCompounds = generator.sideCompounds(Math.max(1, species / (100 * compartments))); //~1% of the species
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() {
+        rdf = ModelFactory.createDefaultModel().add(converted);
+    }
+
+    @Benchmark
+    public Model harmonizeCompartments() {
+        Sbml2Rdf.harmonizeCompartments(rdf, engine);
+        return rdf;
+    }
+
+    @Benchmark
+    public Model addMetaboLinks() {
+        Sbml2Rdf.addMetaboLinks(rdf, engine);
+        return rdf;
+    }
+
+    @Benchmark
+    public Model importSideCompounds() {
+        Sbml2Rdf.importSideCompounds(rdf, sideCompounds, engine);
+        return rdf;
+    }
+}
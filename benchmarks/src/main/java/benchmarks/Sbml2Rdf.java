@@ -0,0 +1,173 @@
+package benchmarks;
+
+import org.apache.jena.rdf.model.Model;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collection;
+
+/**
+ * Access to the SBML2RDF classes, which are in the default package and can't be referenced from the benchmarks package
+ * (JMH requires named packages). The method handles are resolved once, their invocation cost is negligible compared to
+ * the benchmarked operations.
+ */
+final class Sbml2Rdf {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+    private static final Class<?> CONVERTOR = load("Convertor");
+    private static final Class<?> PROPERTY_FILLER = load("PropertyFiller");
+    private static final Class<?> ENGINE = load("PropertyFiller$Engine");
+    private static final Class<?> PIPELINE = load("ConversionPipeline");
+    private static final Class<?> METRICS = load("ConversionMetrics");
+
+    private static final MethodHandle NEW_CONVERTOR = constructor(CONVERTOR,
+            MethodType.methodType(void.class, org.sbml.jsbml.Model.class, Model.class, String.class));
+    private static final MethodHandle RUN = convertorStep("run");
+    private static final MethodHandle CONVERT_COMPARTMENTS = convertorStep("convertCompartments");
+    private static final MethodHandle CONVERT_SPECIES = convertorStep("convertSpecies");
+    private static final MethodHandle CONVERT_REACTIONS = convertorStep("convertReactions");
+    private static final MethodHandle CONVERT_GENES = convertorStep("convertGenes");
+
+    private static final MethodHandle HARMONIZE_COMPARTMENTS = filler("harmonizeCompartments",
+            MethodType.methodType(void.class, Model.class, boolean.class, ENGINE, boolean.class));
+    private static final MethodHandle ADD_METABO_LINKS = filler("addMetaboLinks",
+            MethodType.methodType(void.class, Model.class, Boolean.class, ENGINE));
+    private static final MethodHandle IMPORT_SIDE_COMPOUNDS = filler("importSideCompounds",
+            MethodType.methodType(void.class, Model.class, Collection.class, ENGINE));
+
+    private static final MethodHandle NEW_PIPELINE = constructor(PIPELINE, MethodType.methodType(void.class));
+    private static final MethodHandle NEW_METRICS = constructor(METRICS, MethodType.methodType(void.class));
+    private static final MethodHandle SET_LINK_COMPARTMENTS = setter("setLinkCompartments", boolean.class);
+    private static final MethodHandle SET_SIDE_COMPOUNDS = setter("setSideCompounds", Collection.class);
+    private static final MethodHandle SET_ADD_METABO_LINKS = setter("setAddMetaboLinks", boolean.class);
+    private static final MethodHandle SET_DERIVES_CLOSURE_DEPTH = setter("setDerivesClosureDepth", int.class);
+    private static final MethodHandle SET_ENGINE = setter("setEngine", ENGINE);
+    private static final MethodHandle SET_ENHANCEMENT_THREADS = setter("setEnhancementThreads", int.class);
+    private static final MethodHandle ENHANCE = virtual(PIPELINE, "enhance", MethodType.methodType(void.class, Model.class, METRICS));
+
+    private Sbml2Rdf() {
+    }
+
+    /**
+     * Create a Convertor
+     * @param sbml the sbml model
+     * @param rdf the destination rdf model
+     * @param uri the model URI
+     * @return the Convertor instance
+     */
+    static Object convertor(org.sbml.jsbml.Model sbml, Model rdf, String uri) {
+        return invoke(NEW_CONVERTOR, sbml, rdf, uri);
+    }
+
+    static void run(Object convertor) {
+        invoke(RUN, convertor);
+    }
+
+    static void convertCompartments(Object convertor) {
+        invoke(CONVERT_COMPARTMENTS, convertor);
+    }
+
+    static void convertSpecies(Object convertor) {
+        invoke(CONVERT_SPECIES, convertor);
+    }
+
+    static void convertReactions(Object convertor) {
+        invoke(CONVERT_REACTIONS, convertor);
+    }
+
+    static void convertGenes(Object convertor) {
+        invoke(CONVERT_GENES, convertor);
+    }
+
+    static void harmonizeCompartments(Model rdf, String engine) {
+        invoke(HARMONIZE_COMPARTMENTS, rdf, false, engine(engine), false);
+    }
+
+    static void addMetaboLinks(Model rdf, String engine) {
+        invoke(ADD_METABO_LINKS, rdf, Boolean.FALSE, engine(engine));
+    }
+
+    static void importSideCompounds(Model rdf, Collection<String> sideCompounds, String engine) {
+        invoke(IMPORT_SIDE_COMPOUNDS, rdf, sideCompounds, engine(engine));
+    }
+
+    /**
+     * Create a ConversionPipeline running all the enhancements
+     * @param sideCompounds the side compounds identifiers
+     * @param closureDepth the depth of the transitive metabolic links
+     * @param engine the name of the PropertyFiller.Engine
+     * @param threads the maximum number of enhancements run concurrently
+     * @return the ConversionPipeline instance
+     */
+    static Object enhancementPipeline(Collection<String> sideCompounds, int closureDepth, String engine, int threads) {
+        Object pipeline = invoke(NEW_PIPELINE);
+        invoke(SET_LINK_COMPARTMENTS, pipeline, true);
+        invoke(SET_SIDE_COMPOUNDS, pipeline, sideCompounds);
+        invoke(SET_ADD_METABO_LINKS, pipeline, true);
+        invoke(SET_DERIVES_CLOSURE_DEPTH, pipeline, closureDepth);
+        invoke(SET_ENGINE, pipeline, engine(engine));
+        invoke(SET_ENHANCEMENT_THREADS, pipeline, threads);
+        return pipeline;
+    }
+
+    static void enhance(Object pipeline, Model rdf) {
+        invoke(ENHANCE, pipeline, rdf, invoke(NEW_METRICS));
+    }
+
+    // the PropertyFiller.Engine constant of the given name
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object engine(String engine) {
+        return Enum.valueOf((Class) ENGINE, engine);
+    }
+
+    private static Object invoke(MethodHandle handle, Object... args) {
+        try {
+            return handle.invokeWithArguments(args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("SBML2RDF is not in the classpath, run 'mvn install' in the parent directory", e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner, MethodType type) {
+        try {
+            return LOOKUP.findConstructor(owner, type);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle convertorStep(String name) {
+        return virtual(CONVERTOR, name, MethodType.methodType(void.class));
+    }
+
+    private static MethodHandle setter(String name, Class<?> type) {
+        return virtual(PIPELINE, name, MethodType.methodType(void.class, type));
+    }
+
+    private static MethodHandle virtual(Class<?> owner, String name, MethodType type) {
+        try {
+            return LOOKUP.findVirtual(owner, name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle filler(String name, MethodType type) {
+        try {
+            return LOOKUP.findStatic(PROPERTY_FILLER, name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
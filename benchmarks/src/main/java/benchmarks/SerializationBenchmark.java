@@ -0,0 +1,45 @@
+package benchmarks;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of the serialization of a converted synthetic model, in pretty-printed turtle (the default output) and in the
+ * faster syntaxes. The output is discarded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    /** number of species of the model */
+    @Param({"2000", "10000"})
+    public int species;
+
+    @Param({"TURTLE", "TURTLE_BLOCKS", "NTRIPLES", "RDF_THRIFT"})
+    public String format;
+
+    private Model rdf;
+    private RDFFormat rdfFormat;
+
+    @Setup(Level.Trial)
+    public void convert() throws ReflectiveOperationException {
+        rdf = ModelFactory.createDefaultModel();
+        Sbml2Rdf.run(Sbml2Rdf.convertor(SyntheticModels.genomeScale(species).generate().getModel(), rdf, ConvertorBenchmark.URI));
+        rdfFormat = (RDFFormat) RDFFormat.class.getField(format).get(null);
+    }
+
+    @Benchmark
+    public void write() {
+        RDFDataMgr.write(OutputStream.nullOutputStream(), rdf, rdfFormat);
+    }
+}
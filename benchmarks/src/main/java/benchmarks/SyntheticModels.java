@@ -0,0 +1,174 @@
+package benchmarks;
+
+import org.sbml.jsbml.*;
+import org.sbml.jsbml.ext.fbc.*;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A deterministic generator of genome-scale-like SBML models: the same parameters and seed always give the same model.
+ * Each metabolite is present in several compartments under the same name (for the compartment links), species and
+ * gene products are annotated with identifiers.org URIs, and reactions have two reactants, two products and a gene
+ * product association tree of alternating or/and operators.
+ * Can also be run to write a synthetic SBML file:
+ * java -cp target/benchmarks.jar benchmarks.SyntheticModels output.xml [species] [reactions] [compartments] [geneProducts] [gpaDepth]
+ */
+public class SyntheticModels {
+
+    public static final String FBC_NS = "http://www.sbml.org/sbml/level3/version1/fbc/version2";
+
+    private final int compartments;
+    private final int species;
+    private final int reactions;
+    private final int geneProducts;
+    private final int gpaDepth;
+    private final long seed;
+
+    /**
+     * @param compartments the number of compartments
+     * @param species the number of species, spread over the compartments
+     * @param reactions the number of reactions
+     * @param geneProducts the number of fbc gene products
+     * @param gpaDepth the depth of the gene product associations trees (1 for a single gene product per reaction)
+     * @param seed the seed of the random choices
+     */
+    public SyntheticModels(int compartments, int species, int reactions, int geneProducts, int gpaDepth, long seed) {
+        this.compartments = compartments;
+        this.species = species;
+        this.reactions = reactions;
+        this.geneProducts = geneProducts;
+        this.gpaDepth = gpaDepth;
+        this.seed = seed;
+    }
+
+    /**
+     * A model with the proportions of a genome-scale metabolic network (BiGG-like): 3 compartments, about 1.3 reactions
+     * and 0.8 gene products per species, and gene associations of depth 3.
+     * @param species the number of species
+     * @return the generator
+     */
+    public static SyntheticModels genomeScale(int species) {
+        return genomeScale(species, 3);
+    }
+
+    /**
+     * A genome-scale-like model (see {@link #genomeScale(int)}) whose species are spread over the given number of
+     * compartments, each metabolite being present in all of them
+     * @param species the number of species
+     * @param compartments the number of compartments
+     * @return the generator
+     */
+    public static SyntheticModels genomeScale(int species, int compartments) {
+        return new SyntheticModels(compartments, species, species * 4 / 3, Math.max(1, species * 4 / 5), 3, 42);
+    }
+
+    /**
+     * @return a new sbml document with the generated model
+     */
+    public SBMLDocument generate() {
+        Random random = new Random(seed);
+        SBMLDocument doc = new SBMLDocument(3, 2);
+        Model model = doc.createModel("synthetic");
+        model.setMetaId("synthetic");
+        model.setName("synthetic model");
+
+        List<Compartment> compartmentList = new ArrayList<>();
+        for (int i = 0; i < compartments; i++) {
+            Compartment c = model.createCompartment("c" + i);
+            c.setMetaId(c.getId());
+            c.setName("compartment " + i);
+            c.setConstant(true);
+            compartmentList.add(c);
+        }
+
+        List<Species> speciesList = new ArrayList<>();
+        for (int i = 0; i < species; i++) {
+            //the same metabolite in each compartment in turn
+            int metabolite = i / compartments;
+            Compartment c = compartmentList.get(i % compartments);
+            Species s = model.createSpecies(metaboliteId(metabolite) + "_" + c.getId(), "metabolite " + metabolite, c);
+            s.setMetaId(s.getId());
+            s.addCVTerm(new CVTerm(CVTerm.Qualifier.BQB_IS, "http://identifiers.org/chebi/CHEBI:" + metabolite));
+            speciesList.add(s);
+        }
+
+        FBCModelPlugin fbc = (FBCModelPlugin) model.getPlugin(FBC_NS);
+        for (int i = 0; i < geneProducts; i++) {
+            GeneProduct g = fbc.createGeneProduct("g" + i);
+            g.setMetaId(g.getId());
+            g.setLabel("gene" + i);
+            g.addCVTerm(new CVTerm(CVTerm.Qualifier.BQB_IS_ENCODED_BY, "http://identifiers.org/ncbigene/" + i));
+        }
+
+        for (int i = 0; i < reactions; i++) {
+            Reaction r = model.createReaction("r" + i);
+            r.setMetaId(r.getId());
+            r.setName("reaction " + i);
+            r.setReversible(i % 3 == 0);
+            for (int j = 0; j < 2; j++) {
+                SpeciesReference reactant = r.createReactant(speciesList.get(random.nextInt(species)));
+                reactant.setStoichiometry(1 + random.nextInt(2));
+                SpeciesReference product = r.createProduct(speciesList.get(random.nextInt(species)));
+                product.setStoichiometry(1 + random.nextInt(2));
+            }
+            r.addCVTerm(new CVTerm(CVTerm.Qualifier.BQB_IS, "http://identifiers.org/rhea/" + i));
+            if (geneProducts > 0 && gpaDepth > 0) {
+                FBCReactionPlugin rxnFbc = (FBCReactionPlugin) r.getPlugin(FBC_NS);
+                rxnFbc.createGeneProductAssociation().setAssociation(association(random, gpaDepth, true));
+            }
+        }
+        return doc;
+    }
+
+    // a random gene product association tree of the given depth, alternating or and and operators
+    private Association association(Random random, int depth, boolean or) {
+        if (depth == 1) {
+            GeneProductRef ref = new GeneProductRef(3, 2);
+            ref.setGeneProduct("g" + random.nextInt(geneProducts));
+            return ref;
+        }
+        LogicalOperator operator = or ? new Or(3, 2) : new And(3, 2);
+        for (int i = 0; i < 2; i++) {
+            operator.addAssociation(association(random, depth - 1, !or));
+        }
+        return operator;
+    }
+
+    /**
+     * The identifiers of the first metabolites, present in all the compartments, used as side compounds
+     * @param count the number of side metabolites
+     * @return the species identifiers
+     */
+    public List<String> sideCompounds(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count && i * compartments < species; i++) {
+            for (int c = 0; c < compartments && i * compartments + c < species; c++) {
+                ids.add(metaboliteId(i) + "_c" + c);
+            }
+        }
+        return ids;
+    }
+
+    private static String metaboliteId(int metabolite) {
+        return "m" + metabolite;
+    }
+
+    public static void main(String[] args) throws IOException, XMLStreamException {
+        if (args.length < 1) {
+            System.err.println("usage: SyntheticModels output.xml [species] [reactions] [compartments] [geneProducts] [gpaDepth]");
+            System.exit(1);
+        }
+        int species = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int reactions = args.length > 2 ? Integer.parseInt(args[2]) : species * 4 / 3;
+        int compartments = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        int geneProducts = args.length > 4 ? Integer.parseInt(args[4]) : species * 4 / 5;
+        int gpaDepth = args.length > 5 ? Integer.parseInt(args[5]) : 3;
+        SBMLDocument doc = new SyntheticModels(compartments, species, reactions, geneProducts, gpaDepth, 42).generate();
+        new SBMLWriter().write(doc, new File(args[0]));
+    }
+}
@@ -0,0 +1,109 @@
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.SKOS;
+import vocabulary.SBMLRDF;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Class Aggregator links the species of many converted models that share an identifier (bqbiol:is annotation,
+ * such as a ChEBI or MetaNetX URI), as models are added. It keeps an in-memory index from each identifier to the first
+ * species annotated with it (the representative), and each species of another model annotated with the same identifier
+ * is linked to this representative with skos:exactMatch. As skos:exactMatch is symmetric and transitive, the species of
+ * all the models sharing an identifier are related through their representative. The links are sent as soon as a model
+ * is added, without querying the previous models.
+ * The representatives depend on the order in which the models are added.
+ */
+public class Aggregator {
+
+    private static final Node IS = NodeFactory.createURI(SBMLRDF.BQURI + "is");
+
+    // the representative species of each identifier, and the model it comes from
+    private final Map<Node, Node> representatives = new HashMap<>();
+    private final Map<Node, String> representativeModels = new HashMap<>();
+    private final StreamRDF out;
+    private long links = 0;
+    private int models = 0;
+
+    /**
+     * @param out the destination of the links, started by the caller
+     */
+    public Aggregator(StreamRDF out) {
+        this.out = out;
+        out.prefix("skos", SKOS.getURI());
+    }
+
+    /**
+     * Index the species of a converted model, and send the links between its species and the species of the previous
+     * models sharing an identifier. Can be called concurrently.
+     * @param modelURI the URI of the model
+     * @param rdf the converted model
+     * @return the number of links sent
+     */
+    public int add(String modelURI, Graph rdf) {
+        //read the annotations outside the lock
+        List<Node[]> annotations = new ArrayList<>();
+        ExtendedIterator<Triple> species = rdf.find(Node.ANY, RDF.type.asNode(), SBMLRDF.SPECIE.asNode());
+        try {
+            while (species.hasNext()) {
+                Node specie = species.next().getSubject();
+                ExtendedIterator<Triple> identifiers = rdf.find(specie, IS, Node.ANY);
+                try {
+                    while (identifiers.hasNext()) {
+                        Node identifier = identifiers.next().getObject();
+                        if (identifier.isURI()) annotations.add(new Node[]{identifier, specie});
+                    }
+                } finally {
+                    identifiers.close();
+                }
+            }
+        } finally {
+            species.close();
+        }
+
+        int added = 0;
+        synchronized (this) {
+            for (Node[] annotation : annotations) {
+                Node representative = representatives.putIfAbsent(annotation[0], annotation[1]);
+                if (representative == null) {
+                    representativeModels.put(annotation[0], modelURI);
+                } else if (!modelURI.equals(representativeModels.get(annotation[0]))) {
+                    out.triple(Triple.create(annotation[1], SKOS.exactMatch.asNode(), representative));
+                    added++;
+                }
+            }
+            links += added;
+            models++;
+        }
+        return added;
+    }
+
+    /**
+     * @return the number of links sent
+     */
+    public synchronized long getLinks() {
+        return links;
+    }
+
+    /**
+     * @return the number of distinct identifiers indexed
+     */
+    public synchronized int getIdentifierCount() {
+        return representatives.size();
+    }
+
+    /**
+     * @return the number of models added
+     */
+    public synchronized int getModelCount() {
+        return models;
+    }
+}
@@ -1,24 +1,20 @@
-import org.apache.jena.riot.RDFDataMgr;
-import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdfpatch.text.RDFChangesWriterText;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.TDB2Factory;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
-import org.sbml.jsbml.Model;
-import org.sbml.jsbml.SBMLDocument;
-import org.sbml.jsbml.SBMLReader;
 
 import javax.xml.stream.XMLStreamException;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Collection;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.List;
 
 /**
  * The CLI for the conversion from sbml to turtle RDF
@@ -26,108 +22,272 @@ import java.util.stream.Collectors;
  */
 public class App {
 
-    @Option(name = "-i", aliases = {"--sbml"}, usage = "input SBML file", required = true)
+    @Option(name = "-i", aliases = {"--sbml"}, usage = "input SBML file", required = false)
     public String inputPath = null;
 
-    @Option(name = "-u", aliases = {"--uri"}, usage = "URI that uniquely identify the model", required = true)
+    @Option(name = "-u", aliases = {"--uri"}, usage = "URI that uniquely identify the model (in batch mode with a directory, the prefix of the models URIs, followed by the file names without extension)", required = false)
     public String uri = null;
 
-    @Option(name = "-o", aliases = {"--ttl"}, usage = "path to RDF turtle output file", required = true)
+    @Option(name = "-o", aliases = {"--ttl"}, usage = "path to RDF output file (in batch mode, an output directory, or a .nq file receiving one named graph per model). Optional with --store", required = false)
     public String outputPath = null;
 
+    @Option(name = "-f", aliases = {"--format"},usage = "RDF syntax of the output (default: guessed from the output file extension .ttl, .nt, .nq, .trdf or .rpb, turtle otherwise). Output files ending with .gz are compressed", required = false)
+    private OutputFormat format = null;
+
+    @Option(name = "-z", aliases = {"--gzip"},usage = "compress the output files of the batch mode with gzip", required = false)
+    private Boolean gzip = false;
+
     @Option(name = "-s", aliases = {"--silent"},usage = "disable console print", required = false)
     private Boolean silent = false;
 
     @Option(name = "-lc", aliases = {"--linkCompartments"},usage = "[enhance] add links between same compounds in different compartments (must share same sbml.name)", required = false)
     private Boolean linkCompartments = false;
 
+    @Option(name = "-nn", aliases = {"--normalizeNames"},usage = "[enhance] with --linkCompartments, compare compounds names ignoring case and surrounding white spaces", required = false)
+    private Boolean normalizeNames = false;
+
     @Option(name = "-ml", aliases = {"--addMetaboLinks"},usage = "[enhance] add direct \"derives into\" links between reactants and products of the same reaction", required = false)
     private Boolean addMetaboLink = false;
 
+    @Option(name = "-dc", aliases = {"--derivesClosure"},usage = "[enhance] add transitive \"derives into\" links from each compound to the compounds it can be converted into by at most N reactions, ignoring side compounds (recommended with --importSideCompounds)", required = false)
+    private Integer derivesClosure = null;
+
     @Option(name = "-sc", aliases = {"--importSideCompounds"},usage = "[enhance] add side compounds typing, which are ignored when using --addMetaboLink (recommended). Requires a file with one side compound sbml identifier per line", required = false)
     private String importSideCompounds = null;
 
+    @Option(name = "-st", aliases = {"--streaming"},usage = "read the SBML file with a pull parser and convert it element by element, without building the whole JSBML model in memory", required = false)
+    private Boolean streaming = false;
+
+    @Option(name = "-sk", aliases = {"--skolemize"},usage = "name the speciesRefs without metaId with URIs derived from their reaction, role and position instead of blank nodes, so that the patches of --previous can update them in a store (the stored model must be converted with this option too)", required = false)
+    private Boolean skolemize = false;
+
+    @Option(name = "-ss", aliases = {"--snapshots"},usage = "directory of binary snapshots of the SBML files parsed with JSBML: the first conversion of a file saves its snapshot, which is loaded instead of parsing the XML as long as the file content is unchanged. Not used by the --streaming conversion", required = false)
+    private String snapshots = null;
+
+    @Option(name = "-cm", aliases = {"--compact"},usage = "copy the parsed model into compact arrays (interned strings, integer indexes), converted with the enhancements in a single pass over these arrays instead of enhancing the RDF model. Can't be used with --streaming", required = false)
+    private Boolean compact = false;
+
+    @Option(name = "-so", aliases = {"--streamOutput"},usage = "write the statements to the output file as they are created, instead of building the RDF model first (turtle is written as turtle blocks, and repeated statements are not merged). Can't be used with enhancement options, unless with --compact", required = false)
+    private Boolean streamOutput = false;
+
+    @Option(name = "-m", aliases = {"--metrics"},usage = "path to a JSON report file with the time, memory allocation and number of triples added by each conversion stage", required = false)
+    private String metricsPath = null;
+
+    @Option(name = "-b", aliases = {"--batch"},usage = "batch mode: convert all the SBML files (.xml, .sbml) of a directory, or the models listed in a manifest file (one 'path<TAB>uri' per line)", required = false)
+    private String batch = null;
+
+    @Option(name = "-ag", aliases = {"--aggregate"},usage = "in batch mode, path to a RDF file receiving skos:exactMatch links between species of different models sharing a bqbiol:is identifier (each species is linked to the first species converted with this identifier, the links being transitive). Can't be used with --streamOutput", required = false)
+    private String aggregate = null;
+
+    @Option(name = "-t", aliases = {"--threads"},usage = "number of models converted concurrently in batch mode, or number of threads used with --parallel and --parallelEnhancements", required = false)
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = "-p", aliases = {"--parallel"},usage = "convert the species and reactions of the model on --threads threads (with --streaming, the SBML file is memory-mapped and its lists of species and reactions are parsed in chunks on these threads). Not used with --batch", required = false)
+    private Boolean parallel = false;
+
+    @Option(name = "-pe", aliases = {"--parallelEnhancements"},usage = "[enhance] run the independent enhancements concurrently on --threads threads, each one on a snapshot of the model. Not used with --batch", required = false)
+    private Boolean parallelEnhancements = false;
+
+    @Option(name = "-g", aliases = {"--gpa"},usage = "conversion of the fbc gene product associations: direct links from the reactions to their gene products, the and/or expressions as trees of resources shared between reactions, or both", required = false)
+    private Convertor.GPAMode gpaMode = Convertor.GPAMode.FLAT;
+
+    @Option(name = "-sr", aliases = {"--subsetReactions"},usage = "convert only the listed reactions (comma-separated sbml ids, or a file with one id per line), with the species, compartments and gene products they reference", required = false)
+    private String subsetReactions = null;
+
+    @Option(name = "-sco", aliases = {"--subsetCompartments"},usage = "convert only the reactions of the listed compartments (comma-separated sbml ids), i.e. with a reactant or product in one of them, with the elements they reference", required = false)
+    private String subsetCompartments = null;
+
+    @Option(name = "-sbo", aliases = {"--subsetSBO"},usage = "convert only the reactions annotated with one of the listed SBO terms (comma-separated, such as SBO:0000185), with the elements they reference. The subset options are combined, and read the SBML file with JSBML", required = false)
+    private String subsetSBO = null;
+
+    @Option(name = "-e", aliases = {"--engine"},usage = "[enhance] implementation used to add the extra triples: SPARQL queries, or native joins over in-memory indexes (same triples, faster on large models)", required = false)
+    private PropertyFiller.Engine engine = PropertyFiller.Engine.SPARQL;
+
+    @Option(name = "-db", aliases = {"--store"},usage = "convert and enhance the model in a persistent store, in a named graph identified by the model URI, replacing its previous content (format: 'tdb2:path/to/database/directory'). The model is also exported if an output file is given", required = false)
+    private String store = null;
+
+    @Option(name = "-pv", aliases = {"--previous"},usage = "write the changes from a previous version of the model as a RDF Patch, instead of the whole model. The previous version is either a SBML file (.xml, .sbml), in which case only the changed elements are converted, or a previous RDF output", required = false)
+    private String previous = null;
+
+    @Option(name = "-gx", aliases = {"--graphExport"},usage = "path to a binary file receiving the reaction network with integer ids (species/reaction graph with stoichiometry, and compound graph, in compressed sparse rows), for graph algorithms. Can't be used with --batch, --streamOutput or --previous", required = false)
+    private String graphExport = null;
+
+    @Option(name = "-c", aliases = {"--cache"},usage = "directory of a cache of conversion outputs: if the SBML file, URI, enhancement options and output format were already converted, the cached output is copied without conversion", required = false)
+    private String cache = null;
+
+    @Option(name = "-cs", aliases = {"--cacheSize"},usage = "maximum size of the cache in MB, the least recently used outputs are removed beyond", required = false)
+    private long cacheSize = 1024;
+
+    @Option(name = "-sv", aliases = {"--server"},usage = "run a conversion HTTP server on the given port instead of converting files: POST a SBML document to /convert?uri=... (see the usage for the other parameters). Conversions run on --threads threads", required = false)
+    private Integer serverPort = null;
+
+    @Option(name = "-mf", aliases = {"--maxInFlight"},usage = "with --server, maximum number of requests in progress, the following ones being rejected (default: 4 times --threads)", required = false)
+    private Integer maxInFlight = null;
+
     @Option(name = "-h", aliases = {"--help"},usage = "prints the help", required = false)
     private Boolean h = false;
 
-    private static Set<String> parseSideCompoundsFile(String inputpath) throws IOException {
-        Set<String> sideCompounds = Files.lines(Paths.get(inputpath)).collect(Collectors.toSet());
-        return sideCompounds;
-    }
-
     public static void main(String[] args) throws IOException {
 
         App app = new App();
         app.parseArguments(args);
+        if(app.compact && app.streaming){
+            System.err.println("Error in arguments: --compact can't be used with --streaming, the compact model is built from the JSBML model\n");
+            System.exit(1);
+        }
+        if(app.streamOutput && !app.compact && (app.linkCompartments || app.importSideCompounds!=null || app.addMetaboLink || app.derivesClosure!=null)){
+            System.err.println("Error in arguments: --streamOutput can't be used with enhancement options, which require the whole RDF model\n");
+            System.exit(1);
+        }
+        if(app.store!=null && app.streamOutput){
+            System.err.println("Error in arguments: --streamOutput can't be used with --store\n");
+            System.exit(1);
+        }
+        if(app.aggregate!=null && (app.batch==null || app.streamOutput)){
+            System.err.println("Error in arguments: --aggregate requires --batch, and can't be used with --streamOutput\n");
+            System.exit(1);
+        }
+        if(app.graphExport!=null && (app.batch!=null || app.streamOutput || app.previous!=null)){
+            System.err.println("Error in arguments: --graphExport can't be used with --batch, --streamOutput or --previous\n");
+            System.exit(1);
+        }
+        if(app.previous!=null && (app.batch!=null || app.store!=null || app.streamOutput)){
+            System.err.println("Error in arguments: --previous can't be used with --batch, --store or --streamOutput\n");
+            System.exit(1);
+        }
+        if(app.previous!=null && ConversionPipeline.isSBML(app.previous) && (app.linkCompartments || app.importSideCompounds!=null || app.addMetaboLink || app.derivesClosure!=null)){
+            System.err.println("Error in arguments: enhancement options require the previous version to be a RDF file when using --previous\n");
+            System.exit(1);
+        }
+
+        if(app.previous!=null && ConversionPipeline.isSBML(app.previous) && app.gpaMode!=Convertor.GPAMode.FLAT){
+            System.err.println("Error in arguments: --gpa "+app.gpaMode+" requires the previous version to be a RDF file when using --previous\n");
+            System.exit(1);
+        }
+        if(app.previous!=null && ConversionPipeline.isSBML(app.previous) && (app.subsetReactions!=null || app.subsetCompartments!=null || app.subsetSBO!=null)){
+            System.err.println("Error in arguments: subset options require the previous version to be a RDF file when using --previous\n");
+            System.exit(1);
+        }
 
         if(!app.silent) System.out.println(App.getLabel());
+        if(app.serverPort!=null){
+            app.runServer();
+            return;
+        }
+        Dataset store = app.store==null ? null : TDB2Factory.connectDataset(app.store.substring("tdb2:".length()));
         try {
-            //parse SBML using JSBML library
-            //------------------------------
             Instant start = Instant.now();
-            if(!app.silent) System.out.println("parsing model...");
-            SBMLDocument doc = new SBMLReader().readSBMLFromFile(app.inputPath);
-            Model sbmlModel = doc.getModel(); //JSBML model stores all data from SBML file
-            if(!app.silent){
-                System.out.println("SBML file parsed.");
-                System.out.println(sbmlModel.getCompartmentCount()+" Compartment");
-                System.out.println(sbmlModel.getSpeciesCount()+" Species");
-                System.out.println(sbmlModel.getReactionCount()+" Reactions");
+            ConversionPipeline pipeline = app.createPipeline();
+
+            if(app.batch!=null){
+                //convert many models in the same run
+                //-----------------------------------
+                List<BatchConvertor.Job> jobs = Files.isDirectory(Paths.get(app.batch)) ?
+                        BatchConvertor.fromDirectory(app.batch, app.uri) :
+                        BatchConvertor.fromManifest(app.batch);
+                if(!app.silent) System.out.println("converting "+jobs.size()+" models using "+app.threads+" threads...");
+                BatchConvertor batchConvertor = new BatchConvertor(pipeline, app.threads);
+                batchConvertor.setStreamOutput(app.streamOutput);
+                batchConvertor.setStore(store);
+                batchConvertor.setFormat(app.format!=null ? app.format : OutputFormat.TURTLE, app.gzip);
+                if(app.cache!=null) batchConvertor.setCache(new ConversionCache(app.cache, app.cacheSize*1024*1024));
+                if(!app.silent) batchConvertor.setLog(System.out);
+                int failures;
+                if(app.aggregate!=null){
+                    //link the species of the models sharing an identifier, as models are converted
+                    //------------------------------------------------------------------------------
+                    try(OutputStream out = OutputFormat.open(app.aggregate)){
+                        StreamRDF links = OutputFormat.fromPath(app.aggregate).stream(out);
+                        links.start();
+                        Aggregator aggregator = new Aggregator(links);
+                        batchConvertor.setAggregator(aggregator);
+                        failures = batchConvertor.run(jobs, app.outputPath, app.metricsPath);
+                        links.finish();
+                        if(!app.silent) System.out.println("\n"+aggregator.getLinks()+" links between "+aggregator.getModelCount()+" models ("+aggregator.getIdentifierCount()+" identifiers) exported : "+app.aggregate);
+                    }
+                }else{
+                    failures = batchConvertor.run(jobs, app.outputPath, app.metricsPath);
+                }
+                if(!app.silent) System.out.println("\n"+(jobs.size()-failures)+" models exported : "+(store!=null ? app.store : app.outputPath));
+                if(failures>0) System.err.println(failures+" models could not be converted");
+                if(!app.silent && app.metricsPath!=null) System.out.println("Metrics report exported : "+app.metricsPath);
+            }else{
+                ConversionMetrics metrics = new ConversionMetrics();
+                metrics.setInfo("input", app.inputPath);
+                metrics.setInfo("uri", app.uri);
+                ConversionCache cache = app.cache==null || app.previous!=null || store!=null || app.graphExport!=null ? null : new ConversionCache(app.cache, app.cacheSize*1024*1024);
+                String cacheKey = cache==null ? null : ConversionCache.key(app.inputPath, app.uri, app.cacheSettings(pipeline));
+                boolean cached = cache!=null && cache.fetch(cacheKey, app.outputPath);
+                if(cached){
+                    //unchanged input and settings, reuse the previous output
+                    //--------------------------------------------------------
+                    metrics.setInfo("cache", "hit");
+                    if(!app.silent) System.out.println("RDF model retrieved from cache.");
+                }else if(app.previous!=null){
+                    //write the changes from the previous version as a RDF Patch
+                    //-----------------------------------------------------------
+                    try(OutputStream out = OutputFormat.open(app.outputPath);
+                        RDFChangesWriterText patch = RDFChangesWriterText.create(out)){
+                        patch.start();
+                        pipeline.convertPatch(app.previous, app.inputPath, app.uri, patch, metrics);
+                        patch.finish();
+                    }catch(IllegalArgumentException e){
+                        //no partial patch
+                        Files.deleteIfExists(Paths.get(app.outputPath));
+                        System.err.println("Error: "+e.getMessage()+" (--skolemize option)");
+                        System.exit(1);
+                    }
+                }else if(store!=null){
+                    //convert and enhance RDF model in the persistent store
+                    //------------------------------------------------------
+                    long triples = pipeline.convertToStore(app.inputPath, app.uri, store, metrics);
+                    if(!app.silent) System.out.println("RDF model stored in "+app.store);
+                    if(!app.silent) System.out.println(triples+" triples");
+                    if(app.graphExport!=null) app.exportGraph(Txn.calculateRead(store, () -> GraphExport.fromGraph(store.getNamedModel(app.uri).getGraph())), metrics);
+                    if(app.outputPath!=null){
+                        ConversionMetrics.Stage writingStage = metrics.stage("writing", null);
+                        try(OutputStream out = OutputFormat.open(app.outputPath)){
+                            Txn.executeRead(store, () -> app.outputFormat().write(out, store.getNamedModel(app.uri)));
+                        }finally{
+                            writingStage.close();
+                        }
+                    }
+                }else if(app.streamOutput){
+                    //convert and write RDF statements on the fly
+                    //-------------------------------------------
+                    if(!app.silent) System.out.println("creating and exporting RDF statements...");
+                    long triples;
+                    try(OutputStream out = OutputFormat.open(app.outputPath)){
+                        StreamRDF stream = app.outputFormat().stream(out);
+                        stream.start();
+                        ConversionPipeline.addExternalPrefixes(stream);
+                        triples = pipeline.convertStreamed(app.inputPath, app.uri, stream, metrics);
+                        stream.finish();
+                    }
+                    if(!app.silent) System.out.println(triples+" triples");
+                }else{
+                    org.apache.jena.rdf.model.Model rdf = pipeline.convert(app.inputPath, app.uri, metrics);
+                    pipeline.enhance(rdf, metrics);
+                    if(!app.silent) System.out.println("RDF model created.");
+                    if(!app.silent) System.out.println(rdf.size()+" triples");
+                    if(app.graphExport!=null) app.exportGraph(GraphExport.fromGraph(rdf.getGraph()), metrics);
+
+                    //write RDF model in the selected format
+                    //--------------------------------------
+                    ConversionMetrics.Stage writingStage = metrics.stage("writing", null);
+                    try(OutputStream out = OutputFormat.open(app.outputPath)){
+                        app.outputFormat().write(out, rdf);
+                    }finally{
+                        writingStage.close();
+                    }
+                }
+                if(cache!=null && !cached) cache.store(cacheKey, app.outputPath);
+                if(!app.silent && app.outputPath!=null)System.out.println("\nRDF model exported : "+app.outputPath);
+                if(app.metricsPath!=null){
+                    metrics.write(app.metricsPath);
+                    if(!app.silent) System.out.println("Metrics report exported : "+app.metricsPath);
+                }
             }
-
-            //create RDF model using Jena library
-            //-----------------------------------
-            if(!app.silent) System.out.println("\ncreating RDF statements...");
-            Convertor convert = new Convertor(sbmlModel, app.uri);
-            convert.run();
-            org.apache.jena.rdf.model.Model rdf = convert.getRdfModel();
-
-            if(!app.silent) System.out.println(rdf.listStatements().toList().size()+" triples");
-
-            // [optional] add extra links:
-            //----------------------------
-            int n = rdf.listStatements().toList().size();
-            if(!app.silent && (app.linkCompartments || app.importSideCompounds!=null || app.addMetaboLink)) System.out.println("[enhance] adding extra triples:");
-
-            //      [optional] add links between compartments' compounds
-            //----------------------------------------------------------
-            if(app.linkCompartments){
-                if(!app.silent) System.out.println("[enhance] Harmonizing compartmentalized compound versions...");
-                PropertyFiller.harmonizeCompartments(rdf,false);
-                if(!app.silent) System.out.println((rdf.listStatements().toList().size()-n)+" triples added");
-                n = rdf.listStatements().toList().size();
-            }
-            //      [optional] tag side compounds from file
-            //---------------------------------------------
-            if(app.importSideCompounds!=null){
-                if(!app.silent) System.out.println("[enhance] Importing side compounds...");
-                Collection<String> sideCompounds = parseSideCompoundsFile(app.importSideCompounds);
-                if(!app.silent) System.out.println("[enhance] "+sideCompounds.size()+" side compounds imported.");
-                if(!app.silent) System.out.println("[enhance] Tagging reactions' side reactants and side products...");
-                PropertyFiller.importSideCompounds(rdf,sideCompounds);
-                if(!app.silent) System.out.println((rdf.listStatements().toList().size()-n)+" triples added");
-                n = rdf.listStatements().toList().size();
-            }
-            //      [optional] add compound-to-compound metabolic relationship
-            //----------------------------------------------------------------
-            if(app.addMetaboLink){
-                if(!app.silent && app.importSideCompounds!=null) System.out.println("[enhance] Adding compound-to-compound metabolic links, ignoring side compounds...");
-                if(!app.silent && app.importSideCompounds==null) System.out.println("[enhance] Adding compound-to-compound metabolic links...");
-                PropertyFiller.addMetaboLinks(rdf,false);
-                if(!app.silent) System.out.println((rdf.listStatements().toList().size()-n)+" triples added");
-            }
-
-            rdf.setNsPrefix("cid","http://identifiers.org/pubchem.compound/");
-            rdf.setNsPrefix("chebi","http://identifiers.org/chebi/CHEBI:");
-            rdf.setNsPrefix("mnxCHEM", "http://identifiers.org/metanetx.chemical/");
-            if(!app.silent) System.out.println("RDF model created.");
-            if(!app.silent) System.out.println(rdf.listStatements().toList().size()+" triples");
-
-            //write RDF model in turtle
-            //-------------------------
-            OutputStream out = new FileOutputStream(new File(app.outputPath));
-            RDFDataMgr.write(out, rdf, RDFFormat.TURTLE);
-            if(!app.silent)System.out.println("\nRDF model exported : "+app.outputPath);
             Instant end = Instant.now();
             Duration elapsedTime = Duration.between(start, end);
 
@@ -137,10 +297,92 @@ public class App {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            e.printStackTrace();
+        } finally {
+            if(store!=null) store.close();
+        }
+
+    }
+
+    // serve conversions over HTTP until the JVM is stopped
+    private void runServer() throws IOException {
+        java.util.Collection<String> sideCompounds = importSideCompounds==null ? null : ConversionPipeline.parseSideCompoundsFile(importSideCompounds);
+        int limit = maxInFlight!=null ? maxInFlight : 4*threads;
+        ConversionServer server = new ConversionServer(serverPort, threads, limit, streaming, engine, sideCompounds);
+        server.setGpaMode(gpaMode);
+        if(!silent) server.setLog(System.out);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(5)));
+        server.start();
+        if(!silent) System.out.println("conversion server listening on port "+server.getPort()+" ("+threads+" threads, "+limit+" requests in progress at most)");
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
+    // write the reaction network of the converted model in the graph export file
+    private void exportGraph(GraphExport graph, ConversionMetrics metrics) throws IOException {
+        ConversionMetrics.Stage graphExportStage = metrics.stage("graphExport", null);
+        try{
+            graph.write(Paths.get(graphExport));
+        }finally{
+            graphExportStage.close();
+        }
+        if(!silent) System.out.println("Reaction network exported ("+graph.getSpeciesCount()+" species, "+graph.getReactionCount()+" reactions) : "+graphExport);
     }
 
+    // create the conversion pipeline from the command line options
+    private ConversionPipeline createPipeline() throws IOException {
+        ConversionPipeline pipeline = new ConversionPipeline();
+        pipeline.setStreaming(streaming);
+        pipeline.setGpaMode(gpaMode);
+        pipeline.setSubset(createSubset());
+        if(snapshots!=null) pipeline.setSnapshots(Paths.get(snapshots));
+        pipeline.setCompact(compact);
+        pipeline.setSkolemize(skolemize);
+        if(parallel && batch==null) pipeline.setConversionThreads(threads);
+        if(parallelEnhancements && batch==null) pipeline.setEnhancementThreads(threads);
+        pipeline.setLinkCompartments(linkCompartments);
+        pipeline.setNormalizeNames(normalizeNames);
+        pipeline.setAddMetaboLinks(addMetaboLink);
+        if(derivesClosure!=null) pipeline.setDerivesClosureDepth(derivesClosure);
+        pipeline.setEngine(engine);
+        if(importSideCompounds!=null){
+            if(!silent) System.out.println("[enhance] Importing side compounds...");
+            pipeline.setSideCompounds(ConversionPipeline.parseSideCompoundsFile(importSideCompounds));
+        }
+        if(!silent && batch==null) pipeline.setLog(System.out);
+        return pipeline;
+    }
+
+    // create the selection of the converted reactions from the subset options
+    private SubsetFilter createSubset() throws IOException {
+        SubsetFilter subset = new SubsetFilter();
+        if(subsetReactions!=null){
+            subset.setReactions(Files.isRegularFile(Paths.get(subsetReactions)) ?
+                    Files.readAllLines(Paths.get(subsetReactions)) : splitList(subsetReactions));
+        }
+        if(subsetCompartments!=null) subset.setCompartments(splitList(subsetCompartments));
+        if(subsetSBO!=null) subset.setSBOTerms(splitList(subsetSBO));
+        return subset;
+    }
+
+    private static List<String> splitList(String list) {
+        return java.util.Arrays.asList(list.split(","));
+    }
+
+    // the settings that determine the content of the output file, for the conversion cache
+    private String cacheSettings(ConversionPipeline pipeline) {
+        return pipeline.getSettingsKey()+";format="+outputFormat()+";gzip="+OutputFormat.isCompressed(outputPath)+";streamOutput="+streamOutput;
+    }
+
+    // the selected RDF syntax, or the one matching the output file extension
+    private OutputFormat outputFormat() {
+        return format!=null ? format : OutputFormat.fromPath(outputPath);
+    }
 
     public static String getLabel() {return "\n" +
             " _____ _____ _____ __       ___    _____ ____  _____ \n" +
@@ -170,6 +412,55 @@ public class App {
             "\n\t```" +
             "\n\tjava -jar SBML2RDF.jar -i path/to/sbml.xml -u 'http://my.model.uri#id' -o path/to/output.ttl --linkCompartments --addMetaboLinks --importSideCompounds path/to/side_compounds_file.txt" +
             "\n\t```\n" +
+            "The transitive \"derives into\" relation can be materialized up to a number of reactions, instead of being evaluated with property paths at query time:\n" +
+            "\n\t```" +
+            "\n\tjava -jar SBML2RDF.jar -i path/to/sbml.xml -u 'http://my.model.uri#id' -o path/to/output.ttl --importSideCompounds path/to/side_compounds_file.txt --derivesClosure 3" +
+            "\n\t```\n" +
+            "A slice of a large model can be converted alone: the selected reactions (by id, compartment or SBO term) with the species, compartments and gene products they reference:\n" +
+            "\n\t```" +
+            "\n\tjava -jar SBML2RDF.jar -i path/to/sbml.xml -u 'http://my.model.uri#id' -o path/to/output.ttl --subsetCompartments c_m --subsetSBO SBO:0000176" +
+            "\n\t```\n" +
+            "When the same SBML file is converted several times (for instance with different enhancements), a binary snapshot of the parsed model can be saved on the first run and loaded instead of parsing the XML on the next ones:\n" +
+            "\n\t```" +
+            "\n\tjava -jar SBML2RDF.jar -i path/to/sbml.xml -u 'http://my.model.uri#id' -o path/to/output.ttl --snapshots path/to/snapshots --addMetaboLinks" +
+            "\n\t```\n" +
+            "Large models can be copied into compact arrays after parsing, the RDF statements and the enhancements being generated in a single pass over these arrays, which also allows streaming the enhanced model to the output file:\n" +
+            "\n\t```" +
+            "\n\tjava -jar SBML2RDF.jar -i path/to/sbml.xml -u 'http://my.model.uri#id' -o path/to/output.nt --compact --streamOutput --importSideCompounds path/to/side_compounds_file.txt --addMetaboLinks" +
+            "\n\t```\n" +
+            "Many models can be converted in a single run, on several threads, from a directory of SBML files or from a manifest listing one `path<TAB>uri` per line. " +
+            "Each model is written in its own turtle file in the output directory, or as a named graph of a single N-Quads file:\n" +
+            "\n\t```" +
+            "\n\tjava -jar SBML2RDF.jar -b path/to/sbml/directory -u 'http://my.models.uri/' -o path/to/output/directory -t 8" +
+            "\n\tjava -jar SBML2RDF.jar -b path/to/manifest.tsv -o path/to/output.nq --addMetaboLinks" +
+            "\n\t```\n" +
+            "The species of the converted models can be linked to the species of the other models sharing the same identifier (bqbiol:is annotation), in a separate file:\n" +
+            "\n\t```" +
+            "\n\tjava -jar SBML2RDF.jar -b path/to/sbml/directory -u 'http://my.models.uri/' -o path/to/output.nq --aggregate path/to/links.nt" +
+            "\n\t```\n" +
+            "The reaction network can also be exported in a compact binary file, with integer ids and compressed sparse rows, to be loaded by graph algorithms without parsing RDF (see GraphExport for the layout):\n" +
+            "\n\t```" +
+            "\n\tjava -jar SBML2RDF.jar -i path/to/sbml.xml -u 'http://my.model.uri#id' -o path/to/output.ttl --importSideCompounds path/to/side_compounds_file.txt --graphExport path/to/network.csr" +
+            "\n\t```\n" +
+            "The output syntax is selected from the output file extension (or the --format option): binary RDF (.trdf, .rpb) and N-Triples (.nt) are much faster to write and load than turtle, and files ending with .gz are compressed:\n" +
+            "\n\t```" +
+            "\n\tjava -jar SBML2RDF.jar -i path/to/sbml.xml -u 'http://my.model.uri#id' -o path/to/output.nt.gz" +
+            "\n\t```\n" +
+            "When a model is updated, the changes from its previous version (SBML file, or previous RDF output) can be written as a RDF Patch, to update a triple store without reloading the whole model. The speciesRefs without metaId must then be skolemized, in the stored model and in the patch:\n" +
+            "\n\t```" +
+            "\n\tjava -jar SBML2RDF.jar -i path/to/old_sbml.xml -u 'http://my.model.uri#id' --skolemize -o path/to/output.nt" +
+            "\n\tjava -jar SBML2RDF.jar -i path/to/new_sbml.xml -u 'http://my.model.uri#id' --skolemize --previous path/to/old_sbml.xml -o path/to/changes.rdfp" +
+            "\n\t```\n" +
+            "Models larger than the memory can be converted and enhanced in a persistent TDB2 store, one named graph per model URI, which can be queried afterwards:\n" +
+            "\n\t```" +
+            "\n\tjava -jar SBML2RDF.jar -i path/to/sbml.xml -u 'http://my.model.uri#id' --store tdb2:path/to/database --addMetaboLinks" +
+            "\n\t```\n" +
+            "Many requests can be served by a long-running conversion server, avoiding the startup of the JVM for each model. " +
+            "The SBML document is posted to /convert, with the model URI and the enhancements as query parameters (uri, linkCompartments, addMetaboLinks, sideCompounds, gpa, format):\n" +
+            "\n\t```" +
+            "\n\tjava -jar SBML2RDF.jar --server 8080 -t 8 --importSideCompounds path/to/side_compounds_file.txt" +
+            "\n\tcurl --data-binary @path/to/sbml.xml 'http://localhost:8080/convert?uri=http://my.model.uri%23id&addMetaboLinks=true&sideCompounds=true'" +
+            "\n\t```\n" +
             "The side compounds file must contains one entry per line, using the same identifier system as the input sbml. Such list can be defined manually or obtained using the Met4J toolbox.\n" +
             "The linkCompartments option requires that the SBML's entries of the same compound in different compartments share the same names.\n\n";
     }
@@ -206,6 +497,28 @@ public class App {
             parser.printUsage(System.out);
             System.exit(0);
         }
+
+        String missing = null;
+        if (this.serverPort == null) {
+            //files conversion
+            if (this.batch == null && this.inputPath == null) missing = "-i (--sbml)";
+            else if (this.uri == null && (this.batch == null || Files.isDirectory(Paths.get(this.batch)))) missing = "-u (--uri)";
+            else if (this.outputPath == null && this.store == null) missing = "-o (--ttl)";
+        }
+        boolean badStore = this.store != null && !this.store.startsWith("tdb2:");
+        boolean badInFlight = this.maxInFlight != null && this.maxInFlight < 1;
+        boolean badClosure = this.derivesClosure != null && this.derivesClosure < 1;
+        if (missing != null || this.threads < 1 || badStore || badInFlight || badClosure) {
+            System.err.println("Error in arguments\n");
+            if (missing != null) System.err.println("Option \""+missing+"\" is required\n");
+            else if (badStore) System.err.println("--store must be formatted as 'tdb2:path/to/database/directory'\n");
+            else if (badInFlight) System.err.println("--maxInFlight must be at least 1\n");
+            else if (badClosure) System.err.println("--derivesClosure must be at least 1\n");
+            else System.err.println("--threads must be at least 1\n");
+            System.err.println(this.getUsage());
+            parser.printUsage(System.err);
+            System.exit(0);
+        }
     }
 
 }
@@ -0,0 +1,335 @@
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonArray;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.Txn;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The Class BatchConvertor converts many SBML files within a single JVM, using a bounded pool of worker threads
+ * (one conversion per model at a time). The models are either written in their own file, or in a single N-Quads
+ * file with one named graph per model URI.
+ * @author cfrainay
+ */
+public class BatchConvertor {
+
+    /**
+     * A model to convert: its SBML file, its URI, and the name of its output file
+     */
+    public static class Job {
+        final String inputPath;
+        final String uri;
+        final String name;
+
+        public Job(String inputPath, String uri, String name) {
+            this.inputPath = inputPath;
+            this.uri = uri;
+            this.name = name;
+        }
+    }
+
+    private final ConversionPipeline pipeline;
+    private final int threads;
+    private boolean streamOutput = false;
+    private Dataset store = null;
+    private OutputFormat format = OutputFormat.TURTLE;
+    private boolean compress = false;
+    private ConversionCache cache = null;
+    private Aggregator aggregator = null;
+    private PrintStream log = null;
+
+    /**
+     * @param pipeline the conversion settings, shared by all models
+     * @param threads the number of models converted concurrently
+     */
+    public BatchConvertor(ConversionPipeline pipeline, int threads) {
+        this.pipeline = pipeline;
+        this.threads = threads;
+    }
+
+    /**
+     * @param streamOutput if the statements should be written as they are created (no enhancement)
+     */
+    public void setStreamOutput(boolean streamOutput) {
+        this.streamOutput = streamOutput;
+    }
+
+    /**
+     * @param format the RDF syntax of the files written in the output directory
+     * @param compress if these files should be compressed with gzip
+     */
+    public void setFormat(OutputFormat format, boolean compress) {
+        this.format = format;
+        this.compress = compress;
+    }
+
+    /**
+     * @param cache the cache of the outputs written in the output directory, or null
+     */
+    public void setCache(ConversionCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param aggregator the index receiving each converted model, to link the species of different models, or null
+     */
+    public void setAggregator(Aggregator aggregator) {
+        this.aggregator = aggregator;
+    }
+
+    /**
+     * @param store a transactional dataset receiving each model in its own named graph, instead of output files
+     */
+    public void setStore(Dataset store) {
+        this.store = store;
+    }
+
+    /**
+     * @param log where to print the progress, or null for silent conversion
+     */
+    public void setLog(PrintStream log) {
+        this.log = log;
+    }
+
+    /**
+     * List the SBML files (.xml or .sbml) of a directory. The URI of each model is the base URI followed by the file
+     * name without extension.
+     * @param directory the directory containing SBML files
+     * @param baseUri the prefix of the models URIs
+     * @return the jobs, sorted by file name
+     * @throws IOException if the directory can't be read, or two files have the same name without extension
+     */
+    public static List<Job> fromDirectory(String directory, String baseUri) throws IOException {
+        List<Job> jobs;
+        try (Stream<Path> files = Files.list(Paths.get(directory))) {
+            jobs = files.filter(Files::isRegularFile)
+                    .filter(p -> p.toString().endsWith(".xml") || p.toString().endsWith(".sbml"))
+                    .sorted()
+                    .map(p -> {
+                        String name = baseName(p);
+                        return new Job(p.toString(), baseUri + name, name);
+                    })
+                    .collect(Collectors.toList());
+        }
+        checkUniqueNames(jobs);
+        return jobs;
+    }
+
+    /**
+     * Read a manifest file with one model per line: the SBML file path and the model URI, separated by a tabulation.
+     * Relative paths are resolved from the manifest location. Empty lines and lines starting with # are ignored.
+     * @param manifest the manifest file
+     * @return the jobs, in the manifest order
+     * @throws IOException if the manifest can't be read, or a line is malformed
+     */
+    public static List<Job> fromManifest(String manifest) throws IOException {
+        Path manifestPath = Paths.get(manifest).toAbsolutePath();
+        List<Job> jobs = new ArrayList<>();
+        for (String line : Files.readAllLines(manifestPath)) {
+            if (line.isBlank() || line.startsWith("#")) continue;
+            String[] fields = line.split("\t");
+            if (fields.length < 2) throw new IOException("malformed manifest line (expecting: path<TAB>uri) : " + line);
+            Path sbml = manifestPath.getParent().resolve(fields[0].trim());
+            jobs.add(new Job(sbml.toString(), fields[1].trim(), baseName(sbml)));
+        }
+        return jobs;
+    }
+
+    // fail if two models would be written in the same output file (and, from a directory, have the same URI)
+    private static void checkUniqueNames(List<Job> jobs) throws IOException {
+        Map<String, Job> names = new HashMap<>();
+        for (Job job : jobs) {
+            Job previous = names.putIfAbsent(job.name, job);
+            if (previous != null) {
+                throw new IOException(previous.inputPath + " and " + job.inputPath + " have the same model name " + job.name + ", rename one of them");
+            }
+        }
+    }
+
+    private static String baseName(Path p) {
+        String name = p.getFileName().toString();
+        int ext = name.lastIndexOf('.');
+        return ext > 0 ? name.substring(0, ext) : name;
+    }
+
+    private void print(String message) {
+        if (log != null) synchronized (log) { log.println(message); }
+    }
+
+    /**
+     * Convert all the models. If the output path ends with .nq (or .nq.gz), all models are written in this N-Quads file,
+     * in named graphs identified by the models URIs. Otherwise, the output path is a directory receiving one file per
+     * model, in the selected format.
+     * If a store is set, each model is loaded in a named graph of the store instead, and the output is not used.
+     * A model that fails to be converted is reported and skipped.
+     * @param jobs the models to convert
+     * @param output the N-Quads file or the output directory, unused with a store
+     * @param metricsPath path to a JSON report with the metrics of each model, or null
+     * @return the number of models that couldn't be converted
+     * @throws IOException if the output can't be created, or two models would be written in the same file
+     * @throws InterruptedException if interrupted while waiting for the conversions
+     */
+    public int run(List<Job> jobs, String output, String metricsPath) throws IOException, InterruptedException {
+        boolean singleFile = store == null && (output.endsWith(".nq") || output.endsWith(".nq.gz"));
+        if (store == null && !singleFile) {
+            checkUniqueNames(jobs);
+            Files.createDirectories(Paths.get(output));
+        }
+
+        AtomicInteger failures = new AtomicInteger();
+        JsonArray reports = new JsonArray();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try (OutputStream nquads = singleFile ? OutputFormat.open(output) : null) {
+            StreamRDF quadWriter = null;
+            if (singleFile) {
+                quadWriter = OutputFormat.NQUADS.stream(nquads);
+                quadWriter.start();
+            }
+            final StreamRDF quads = quadWriter;
+
+            List<Future<?>> tasks = new ArrayList<>();
+            for (Job job : jobs) {
+                tasks.add(workers.submit(() -> {
+                    ConversionMetrics metrics = new ConversionMetrics();
+                    metrics.setInfo("input", job.inputPath);
+                    metrics.setInfo("uri", job.uri);
+                    try {
+                        long triples = store != null ? convertToStore(job, metrics) :
+                                singleFile ? convertToGraph(job, quads, metrics) : convertToFile(job, output, metrics);
+                        metrics.setInfo("status", triples < 0 ? "cached" : "converted");
+                        print(job.inputPath + " : " + (triples < 0 ? "cached" : triples + " triples"));
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                        metrics.setInfo("status", "failed: " + e);
+                        print(job.inputPath + " : conversion failed (" + e + ")");
+                    }
+                    synchronized (reports) {
+                        reports.add(metrics.toJson());
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (java.util.concurrent.ExecutionException e) {
+                    failures.incrementAndGet();
+                }
+            }
+            if (singleFile) quads.finish();
+        } finally {
+            workers.shutdownNow();
+        }
+
+        if (metricsPath != null) {
+            try (OutputStream out = new FileOutputStream(metricsPath)) {
+                JSON.write(out, reports);
+            }
+        }
+        return failures.get();
+    }
+
+    // convert a model in its own file, returns the number of statements, or -1 if the file was retrieved from the cache.
+    // The file is removed if the conversion fails
+    private long convertToFile(Job job, String outputDirectory, ConversionMetrics metrics) throws Exception {
+        File outputFile = Paths.get(outputDirectory, job.name + "." + format.getExtension() + (compress ? ".gz" : "")).toFile();
+        String cacheKey = null;
+        if (cache != null) {
+            cacheKey = ConversionCache.key(job.inputPath, job.uri, pipeline.getSettingsKey() + ";format=" + format + ";gzip=" + compress + ";streamOutput=" + streamOutput);
+            if (cache.fetch(cacheKey, outputFile.getPath())) {
+                if (aggregator != null) aggregate(job, RDFDataMgr.loadGraph(outputFile.getPath()), metrics);
+                return -1;
+            }
+        }
+        try {
+            long triples = writeToFile(job, outputFile, metrics);
+            if (cache != null) cache.store(cacheKey, outputFile.getPath());
+            return triples;
+        } catch (Exception e) {
+            outputFile.delete();
+            throw e;
+        }
+    }
+
+    private long writeToFile(Job job, File outputFile, ConversionMetrics metrics) throws Exception {
+        if (streamOutput) {
+            try (OutputStream out = OutputFormat.open(outputFile.getPath())) {
+                StreamRDF stream = format.stream(out);
+                stream.start();
+                ConversionPipeline.addExternalPrefixes(stream);
+                long triples = pipeline.convertStreamed(job.inputPath, job.uri, stream, metrics);
+                stream.finish();
+                return triples;
+            }
+        }
+        org.apache.jena.rdf.model.Model rdf = pipeline.convert(job.inputPath, job.uri, metrics);
+        pipeline.enhance(rdf, metrics);
+        if (aggregator != null) aggregate(job, rdf.getGraph(), metrics);
+        ConversionMetrics.Stage writingStage = metrics.stage("writing", null);
+        try (OutputStream out = OutputFormat.open(outputFile.getPath())) {
+            format.write(out, rdf);
+        } finally {
+            writingStage.close();
+        }
+        return rdf.size();
+    }
+
+    // convert a model and write it as a named graph in the shared N-Quads stream, returns the number of statements
+    private long convertToGraph(Job job, StreamRDF quads, ConversionMetrics metrics) throws Exception {
+        org.apache.jena.rdf.model.Model rdf = pipeline.convert(job.inputPath, job.uri, metrics);
+        pipeline.enhance(rdf, metrics);
+        if (aggregator != null) aggregate(job, rdf.getGraph(), metrics);
+        Node graphName = NodeFactory.createURI(job.uri);
+        ConversionMetrics.Stage writingStage = metrics.stage("writing", null);
+        try {
+            synchronized (quads) {
+                ExtendedIterator<Triple> it = rdf.getGraph().find();
+                try {
+                    while (it.hasNext()) quads.quad(Quad.create(graphName, it.next()));
+                } finally {
+                    it.close();
+                }
+            }
+        } finally {
+            writingStage.close();
+        }
+        return rdf.size();
+    }
+
+    // convert a model in a named graph of the store, returns the number of statements
+    private long convertToStore(Job job, ConversionMetrics metrics) throws Exception {
+        long triples = pipeline.convertToStore(job.inputPath, job.uri, store, metrics);
+        if (aggregator != null) Txn.executeRead(store, () -> aggregate(job, store.getNamedModel(job.uri).getGraph(), metrics));
+        return triples;
+    }
+
+    // link the species of a converted model to the ones of the previous models
+    private void aggregate(Job job, Graph rdf, ConversionMetrics metrics) {
+        ConversionMetrics.Stage aggregateStage = metrics.stage("aggregate", null);
+        try {
+            aggregator.add(job.uri, rdf);
+        } finally {
+            aggregateStage.close();
+        }
+    }
+}
@@ -0,0 +1,631 @@
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.sbml.jsbml.*;
+import org.sbml.jsbml.ext.fbc.*;
+import vocabulary.SBMLRDF;
+
+import java.util.*;
+
+/**
+ * A compact representation of the content of a sbml model used by the conversion, as primitive arrays indexed by
+ * integers (struct of arrays), with all the strings (identifiers, names, annotation URIs...) interned in a dictionary.
+ * Species, reactions and speciesRefs are given dense indexes, the speciesRefs of each reaction being stored in
+ * compressed sparse rows. Once built, the JSBML model is not needed anymore.
+ *
+ * The model is written as the same statements as the {@link Convertor}, and the enhancements of the
+ * {@link PropertyFiller} are computed on the arrays and sent as statements, without reading them back from a RDF
+ * model. The side compounds are typed when the speciesRefs are written, so they must be set before.
+ */
+public class CompactModel {
+
+    //roles of the speciesRefs
+    private static final byte REACTANT = 0;
+    private static final byte PRODUCT = 1;
+    private static final byte MODIFIER = 2;
+    private static final String[] ROLES = {"reactant", "product", "modifier"};
+    private static final int NONE = -1;
+
+    private final String modelNamespace;
+    private final String fbcNamespace;
+
+    //the string dictionary, the other arrays holding indexes in it
+    private final String[] strings;
+
+    //the sbml elements, in the order they are converted: model, compartments, species, reactions, gene products
+    private final int[] metaIds;
+    private final int[] ids;
+    private final int[] names;
+    //their biological qualifier annotations: the terms of element e are at annotationOffsets[e] to annotationOffsets[e+1]-1
+    private final int[] annotationOffsets;
+    private final int[] qualifiers;
+    private final int[] annotations;
+
+    private final int compartmentCount;
+    private final int speciesCount;
+    private final int reactionCount;
+    private final int geneProductCount;
+    //the compartment metaId of each species
+    private final int[] speciesCompartments;
+    private final BitSet reversible;
+
+    //speciesRefs: the refs of reaction r are at refOffsets[r] to refOffsets[r+1]-1, reactants, products then modifiers
+    private final int[] refOffsets;
+    private final int[] refSpecies;
+    private final int[] refMetaIds;
+    private final int[] refIds;
+    private final byte[] refRoles;
+    private final double[] refStoichiometry;
+
+    //gene product associations: the gene products metaIds linked to reaction r are at gpaOffsets[r] to gpaOffsets[r+1]-1
+    private final int[] gpaOffsets;
+    private final int[] gpaGenes;
+    //and/or expressions, each converted once: a node is a gene product metaId (>= 0) or an operator o (encoded -o-1)
+    private final int[] reactionAssociations;
+    private final int[] reactionOperatorsEnd;
+    private final int[] operatorKeys;
+    private final BitSet operatorAnd;
+    private final int[] operatorOffsets;
+    private final int[] operatorChildren;
+
+    //the side compounds, set before writing the model
+    private final BitSet sideCompounds = new BitSet();
+    private boolean skolemize = false;
+
+    private CompactModel(Builder b) {
+        modelNamespace = b.modelNamespace;
+        fbcNamespace = b.fbcNamespace;
+        strings = b.strings.toArray(new String[0]);
+        metaIds = b.metaIds.toArray();
+        ids = b.ids.toArray();
+        names = b.names.toArray();
+        annotationOffsets = b.annotationOffsets.toArray();
+        qualifiers = b.qualifiers.toArray();
+        annotations = b.annotations.toArray();
+        compartmentCount = b.compartmentCount;
+        speciesCount = b.speciesCount;
+        reactionCount = b.reactionCount;
+        geneProductCount = b.geneProductCount;
+        speciesCompartments = b.speciesCompartments.toArray();
+        reversible = b.reversible;
+        refOffsets = b.refOffsets.toArray();
+        refSpecies = b.refSpecies.toArray();
+        refMetaIds = b.refMetaIds.toArray();
+        refIds = b.refIds.toArray();
+        refRoles = Arrays.copyOf(b.refRoles, b.refSpecies.size());
+        refStoichiometry = Arrays.copyOf(b.refStoichiometry, b.refSpecies.size());
+        gpaOffsets = b.gpaOffsets.toArray();
+        gpaGenes = b.gpaGenes.toArray();
+        reactionAssociations = b.reactionAssociations.toArray();
+        reactionOperatorsEnd = b.reactionOperatorsEnd.toArray();
+        operatorKeys = b.operatorKeys.toArray();
+        operatorAnd = b.operatorAnd;
+        operatorOffsets = b.operatorOffsets.toArray();
+        operatorChildren = b.operatorChildren.toArray();
+    }
+
+    /**
+     * Build the compact representation of a sbml model
+     * @param sbmlModel the sbml model
+     * @param modelURI the URI of the model
+     * @param subset the reactions to keep, with the elements they reference, all the model if no criteria are set
+     * @return the compact model
+     */
+    public static CompactModel fromModel(Model sbmlModel, String modelURI, SubsetFilter subset) {
+        return new Builder(sbmlModel, modelURI, subset).build();
+    }
+
+    /**
+     * @return the number of compartments
+     */
+    public int getCompartmentCount() {
+        return compartmentCount;
+    }
+
+    /**
+     * @return the number of species
+     */
+    public int getSpeciesCount() {
+        return speciesCount;
+    }
+
+    /**
+     * @return the number of reactions
+     */
+    public int getReactionCount() {
+        return reactionCount;
+    }
+
+    /**
+     * @return the number of distinct strings
+     */
+    public int getStringCount() {
+        return strings.length;
+    }
+
+    // the index of the first species, reaction and gene product in the elements arrays (the model being the first one)
+    private int firstSpecies() {
+        return 1 + compartmentCount;
+    }
+
+    private int firstReaction() {
+        return firstSpecies() + speciesCount;
+    }
+
+    private int firstGeneProduct() {
+        return firstReaction() + reactionCount;
+    }
+
+    private Node resource(int metaId) {
+        return NodeFactory.createURI(modelNamespace + strings[metaId]);
+    }
+
+    private Node literal(int string) {
+        return NodeFactory.createLiteral(strings[string]);
+    }
+
+    private Node species(int species) {
+        return resource(metaIds[firstSpecies() + species]);
+    }
+
+    /**
+     * Set the side compounds, whose speciesRefs are typed as side reactants or side products when the model is written,
+     * and which are ignored by the compound links
+     * @param sideCompoundIds the sbml identifiers of the side compounds
+     * @return the number of species found
+     */
+    public int setSideCompounds(Collection<String> sideCompoundIds) {
+        Set<String> sideIds = sideCompoundIds instanceof Set ? (Set<String>) sideCompoundIds : new HashSet<>(sideCompoundIds);
+        sideCompounds.clear();
+        for (int s = 0; s < speciesCount; s++) {
+            if (sideIds.contains(strings[ids[firstSpecies() + s]])) sideCompounds.set(s);
+        }
+        return sideCompounds.cardinality();
+    }
+
+    /**
+     * @param skolemize if the speciesRefs without metaId should be written with URIs derived from their reaction, role
+     *                  and position instead of blank nodes, the same as {@link Convertor#setSkolemize(boolean)}
+     */
+    public void setSkolemize(boolean skolemize) {
+        this.skolemize = skolemize;
+    }
+
+    /**
+     * Send the statements describing the model, the same as {@link Convertor#run()}, with the side compounds typing
+     * @param out the destination of the statements, started by the caller
+     * @param gpaMode how the gene product associations are converted
+     */
+    public void write(StreamRDF out, Convertor.GPAMode gpaMode) {
+        out.prefix(SBMLRDF.getPREFIX(), SBMLRDF.getURI());
+        out.prefix("bqbiol", SBMLRDF.BQURI);
+        out.prefix("model", modelNamespace);
+        if (fbcNamespace != null) out.prefix("fbc", fbcNamespace);
+        Node type = RDF.type.asNode();
+
+        Node model = element(out, 0);
+        out.triple(Triple.create(model, type, SBMLRDF.SBMLMODEL.asNode()));
+        out.triple(Triple.create(model, SBMLRDF.NAME.asNode(), literal(names[0])));
+        annotate(out, 0, model);
+
+        for (int c = 0; c < compartmentCount; c++) {
+            Node compartment = element(out, 1 + c);
+            out.triple(Triple.create(compartment, type, SBMLRDF.COMPARTMENT.asNode()));
+            out.triple(Triple.create(compartment, SBMLRDF.NAME.asNode(), literal(names[1 + c])));
+            annotate(out, 1 + c, compartment);
+            out.triple(Triple.create(model, SBMLRDF.HAS_COMPARTMENT.asNode(), compartment));
+        }
+
+        for (int s = 0; s < speciesCount; s++) {
+            int e = firstSpecies() + s;
+            Node species = element(out, e);
+            out.triple(Triple.create(species, type, SBMLRDF.SPECIE.asNode()));
+            out.triple(Triple.create(species, SBMLRDF.NAME.asNode(), literal(names[e])));
+            out.triple(Triple.create(species, SBMLRDF.HAS_COMPARTMENT.asNode(), resource(speciesCompartments[s])));
+            annotate(out, e, species);
+            out.triple(Triple.create(model, SBMLRDF.HAS_SPECIE.asNode(), species));
+        }
+
+        Node geneProductAssociation = fbcNamespace == null ? null : NodeFactory.createURI(fbcNamespace + "geneProductAssociation");
+        Node association = fbcNamespace == null ? null : NodeFactory.createURI(fbcNamespace + "association");
+        int operatorsWritten = 0;
+        for (int r = 0; r < reactionCount; r++) {
+            int e = firstReaction() + r;
+            Node reaction = element(out, e);
+            out.triple(Triple.create(reaction, type, SBMLRDF.REACTION.asNode()));
+            out.triple(Triple.create(reaction, SBMLRDF.NAME.asNode(), literal(names[e])));
+            out.triple(Triple.create(reaction, SBMLRDF.REVERSIBLE.asNode(), ResourceFactory.createTypedLiteral(reversible.get(r)).asNode()));
+            int[] roleIndexes = new int[3];
+            for (int i = refOffsets[r]; i < refOffsets[r + 1]; i++) writeSpeciesRef(out, reaction, i, roleIndexes[refRoles[i]]++);
+            annotate(out, e, reaction);
+            out.triple(Triple.create(model, SBMLRDF.HAS_REACTION.asNode(), reaction));
+            if (gpaMode != Convertor.GPAMode.STRUCTURED) {
+                for (int i = gpaOffsets[r]; i < gpaOffsets[r + 1]; i++) {
+                    out.triple(Triple.create(reaction, geneProductAssociation, resource(gpaGenes[i])));
+                }
+            }
+            if (gpaMode != Convertor.GPAMode.FLAT && reactionAssociations[r] != NONE) {
+                //the operators first used by this reaction, children first
+                for (; operatorsWritten < reactionOperatorsEnd[r]; operatorsWritten++) {
+                    int o = operatorsWritten;
+                    Node operator = associationNode(-o - 1);
+                    out.triple(Triple.create(operator, type, NodeFactory.createURI(fbcNamespace + (operatorAnd.get(o) ? "and" : "or"))));
+                    for (int i = operatorOffsets[o]; i < operatorOffsets[o + 1]; i++) {
+                        out.triple(Triple.create(operator, association, associationNode(operatorChildren[i])));
+                    }
+                }
+                out.triple(Triple.create(reaction, association, associationNode(reactionAssociations[r])));
+            }
+        }
+
+        if (fbcNamespace != null) {
+            Node geneProduct = NodeFactory.createURI(fbcNamespace + "geneProduct");
+            for (int g = 0; g < geneProductCount; g++) {
+                int e = firstGeneProduct() + g;
+                Node gene = element(out, e);
+                out.triple(Triple.create(gene, type, geneProduct));
+                out.triple(Triple.create(gene, SBMLRDF.NAME.asNode(), literal(names[e])));
+                annotate(out, e, gene);
+            }
+        }
+    }
+
+    // the resource of an element, with its label
+    private Node element(StreamRDF out, int e) {
+        Node node = resource(metaIds[e]);
+        out.triple(Triple.create(node, RDFS.label.asNode(), literal(ids[e])));
+        return node;
+    }
+
+    private void annotate(StreamRDF out, int e, Node node) {
+        for (int i = annotationOffsets[e]; i < annotationOffsets[e + 1]; i++) {
+            out.triple(Triple.create(node, NodeFactory.createURI(SBMLRDF.BQURI + strings[qualifiers[i]]),
+                    NodeFactory.createURI(strings[annotations[i]])));
+        }
+    }
+
+    // write the i-th speciesRef, the index-th of its role in the reaction
+    private void writeSpeciesRef(StreamRDF out, Node reaction, int i, int index) {
+        Node ref;
+        if (refMetaIds[i] == NONE) {
+            ref = skolemize ? NodeFactory.createURI(Convertor.speciesRefURI(reaction.getURI(), ROLES[refRoles[i]], index))
+                    : NodeFactory.createBlankNode();
+        } else {
+            ref = resource(refMetaIds[i]);
+            out.triple(Triple.create(ref, RDFS.label.asNode(), literal(refIds[i])));
+        }
+        Node type = RDF.type.asNode();
+        if (refRoles[i] == MODIFIER) {
+            out.triple(Triple.create(ref, type, SBMLRDF.MODIFIERSPECIESREF.asNode()));
+            out.triple(Triple.create(ref, SBMLRDF.HAS_SPECIE.asNode(), species(refSpecies[i])));
+            out.triple(Triple.create(reaction, SBMLRDF.MODIFIER.asNode(), ref));
+            return;
+        }
+        out.triple(Triple.create(ref, type, SBMLRDF.SPECIESREF.asNode()));
+        out.triple(Triple.create(ref, SBMLRDF.STOICHIOMETRY.asNode(), ResourceFactory.createTypedLiteral(refStoichiometry[i]).asNode()));
+        out.triple(Triple.create(ref, SBMLRDF.HAS_SPECIE.asNode(), species(refSpecies[i])));
+        boolean reactant = refRoles[i] == REACTANT;
+        out.triple(Triple.create(reaction, (reactant ? SBMLRDF.REACTANT : SBMLRDF.PRODUCT).asNode(), ref));
+        if (sideCompounds.get(refSpecies[i])) {
+            out.triple(Triple.create(ref, type, (reactant ? SBMLRDF.SIDEREACTANT : SBMLRDF.SIDEPRODUCT).asNode()));
+        }
+    }
+
+    private Node associationNode(int node) {
+        if (node >= 0) return resource(node);
+        return NodeFactory.createURI(Convertor.gpaNodeURI(modelNamespace, strings[operatorKeys[-node - 1]]));
+    }
+
+    /**
+     * Send the links between species sharing the same name, the same as
+     * {@link PropertyFiller#harmonizeCompartmentsIndexed(org.apache.jena.rdf.model.Model, boolean, boolean)}
+     * @param out the destination of the statements
+     * @param useSameAs if the relatedness should use the owl:sameAs property
+     * @param normalizeNames if names should be compared ignoring case and leading/trailing white spaces
+     * @return the number of links sent
+     */
+    public long addCompartmentLinks(StreamRDF out, boolean useSameAs, boolean normalizeNames) {
+        if (!useSameAs) out.prefix(SBMLRDF.SIOPREFIX, SBMLRDF.SIOURI);
+        Node link = (useSameAs ? OWL.sameAs : SBMLRDF.IS_VARIANT_OF).asNode();
+
+        //group the species by name, the names being interned
+        int[] group = new int[speciesCount];
+        Map<Object, Integer> groups = new HashMap<>();
+        for (int s = 0; s < speciesCount; s++) {
+            int name = names[firstSpecies() + s];
+            Object key = normalizeNames ? strings[name].trim().toLowerCase(Locale.ROOT) : (Object) name;
+            group[s] = groups.computeIfAbsent(key, k -> groups.size());
+        }
+        //species of each group in compressed sparse rows
+        int[] offsets = new int[groups.size() + 1];
+        for (int s = 0; s < speciesCount; s++) offsets[group[s] + 1]++;
+        for (int g = 0; g < groups.size(); g++) offsets[g + 1] += offsets[g];
+        int[] members = new int[speciesCount];
+        int[] fill = Arrays.copyOf(offsets, groups.size());
+        for (int s = 0; s < speciesCount; s++) members[fill[group[s]]++] = s;
+
+        long links = 0;
+        for (int g = 0; g < groups.size(); g++) {
+            for (int i = offsets[g]; i < offsets[g + 1]; i++) {
+                Node compound1 = species(members[i]);
+                for (int j = offsets[g]; j < offsets[g + 1]; j++) {
+                    if (i == j) continue;
+                    out.triple(Triple.create(compound1, link, species(members[j])));
+                    links++;
+                }
+            }
+        }
+        return links;
+    }
+
+    // send each link of the compound graph, see ReactionIndex#forEachLink
+    private void forEachLink(ReactionIndex.LinkConsumer consumer) {
+        for (int r = 0; r < reactionCount; r++) {
+            boolean reversible = this.reversible.get(r);
+            for (int i = refOffsets[r]; i < refOffsets[r + 1]; i++) {
+                if (refRoles[i] != REACTANT || sideCompounds.get(refSpecies[i])) continue;
+                for (int j = refOffsets[r]; j < refOffsets[r + 1]; j++) {
+                    if (refRoles[j] != PRODUCT || sideCompounds.get(refSpecies[j])) continue;
+                    consumer.accept(r, refSpecies[i], refSpecies[j]);
+                    if (reversible) consumer.accept(r, refSpecies[j], refSpecies[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Send the links from the non-side reactants to the non-side products of each reaction (and conversely for
+     * reversible reactions), the same as {@link PropertyFiller#addMetaboLinksIndexed(org.apache.jena.rdf.model.Model, Boolean)}.
+     * Each link is sent once, even if created by several reactions.
+     * @param out the destination of the statements
+     * @param useTransitive if a transitive property should be use
+     * @return the number of links sent
+     */
+    public long addMetaboLinks(StreamRDF out, boolean useTransitive) {
+        out.prefix(SBMLRDF.SIOPREFIX, SBMLRDF.SIOURI);
+        Node metabolink = (useTransitive ? SBMLRDF.DERIVES_INTO : SBMLRDF.IMMEDIATELY_DERIVES_INTO).asNode();
+
+        //the links as (source, target) pairs packed in longs, sorted to remove duplicates
+        long[][] pairs = {new long[1024]};
+        int[] count = {0};
+        forEachLink((reaction, source, target) -> {
+            if (count[0] == pairs[0].length) pairs[0] = Arrays.copyOf(pairs[0], count[0] * 2);
+            pairs[0][count[0]++] = ((long) source << 32) | target;
+        });
+        long[] links = pairs[0];
+        Arrays.sort(links, 0, count[0]);
+        long sent = 0;
+        for (int i = 0; i < count[0]; i++) {
+            if (i > 0 && links[i] == links[i - 1]) continue;
+            out.triple(Triple.create(species((int) (links[i] >>> 32)), metabolink, species((int) links[i])));
+            sent++;
+        }
+        return sent;
+    }
+
+    /**
+     * Send the transitive "derives into" links up to a given number of reactions, the same as
+     * {@link PropertyFiller#addDerivesClosure(org.apache.jena.rdf.model.Model, int)}
+     * @param out the destination of the statements
+     * @param maxDepth the maximum number of reactions between two linked compounds
+     * @return the number of links sent
+     */
+    public long addDerivesClosure(StreamRDF out, int maxDepth) {
+        out.prefix(SBMLRDF.SIOPREFIX, SBMLRDF.SIOURI);
+        Node derivesInto = SBMLRDF.DERIVES_INTO.asNode();
+        return PropertyFiller.closure(speciesCount, this::forEachLink, maxDepth, (source, target) ->
+                out.triple(Triple.create(species(source), derivesInto, species(target))));
+    }
+
+    // A growable array of int
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    // Collects the content of a JSBML model in growable arrays
+    private static class Builder {
+        private final Model sbmlModel;
+        private final SubsetFilter subset;
+        private final String modelNamespace;
+        private String fbcNamespace = null;
+
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> stringIndex = new HashMap<>();
+        private final Map<String, Integer> speciesIndex = new HashMap<>();
+
+        private final IntList metaIds = new IntList();
+        private final IntList ids = new IntList();
+        private final IntList names = new IntList();
+        private final IntList annotationOffsets = new IntList();
+        private final IntList qualifiers = new IntList();
+        private final IntList annotations = new IntList();
+        private int compartmentCount, speciesCount, reactionCount, geneProductCount;
+        private final IntList speciesCompartments = new IntList();
+        private final BitSet reversible = new BitSet();
+
+        private final IntList refOffsets = new IntList();
+        private final IntList refSpecies = new IntList();
+        private final IntList refMetaIds = new IntList();
+        private final IntList refIds = new IntList();
+        private byte[] refRoles = new byte[16];
+        private double[] refStoichiometry = new double[16];
+
+        private final IntList gpaOffsets = new IntList();
+        private final IntList gpaGenes = new IntList();
+        private final IntList reactionAssociations = new IntList();
+        private final IntList reactionOperatorsEnd = new IntList();
+        private final Map<String, Integer> operatorIndex = new HashMap<>();
+        private final IntList operatorKeys = new IntList();
+        private final BitSet operatorAnd = new BitSet();
+        private final IntList operatorOffsets = new IntList();
+        private final IntList operatorChildren = new IntList();
+
+        Builder(Model sbmlModel, String modelURI, SubsetFilter subset) {
+            this.sbmlModel = sbmlModel;
+            this.modelNamespace = modelURI + "#";
+            this.subset = subset;
+        }
+
+        private int string(String value) {
+            return stringIndex.computeIfAbsent(value, v -> {
+                strings.add(v);
+                return strings.size() - 1;
+            });
+        }
+
+        private void element(AbstractSBase element, String name) {
+            annotationOffsets.add(qualifiers.size());
+            metaIds.add(string(element.getMetaId()));
+            ids.add(string(element.getId()));
+            names.add(string(name));
+            if (!element.isSetAnnotation()) return; //avoid JSBML creating an empty annotation
+            for (CVTerm term : element.getAnnotation().getListOfCVTerms()) {
+                if (!term.isBiologicalQualifier()) continue;
+                int qualifier = string(term.getQualifier().getElementNameEquivalent());
+                for (String resource : term.getResources()) {
+                    qualifiers.add(qualifier);
+                    annotations.add(string(resource));
+                }
+            }
+        }
+
+        CompactModel build() {
+            SubsetFilter.Selection selection = subset.isEmpty() ? null : subset.select(sbmlModel);
+            boolean fbc = sbmlModel.isPackageEnabled("fbc");
+            FBCModelPlugin fbcModel = fbc ? (FBCModelPlugin) sbmlModel.getPlugin("fbc") : null;
+            if (fbc) fbcNamespace = fbcModel.getURI() + "#";
+
+            element(sbmlModel, sbmlModel.getName());
+            for (Compartment compartment : selection != null ? selection.compartments : sbmlModel.getListOfCompartments()) {
+                element(compartment, compartment.getName());
+                compartmentCount++;
+            }
+            for (Species species : selection != null ? selection.species : sbmlModel.getListOfSpecies()) {
+                element(species, species.getName());
+                speciesCompartments.add(string(species.getCompartmentInstance().getMetaId()));
+                speciesIndex.put(species.getId(), speciesCount++);
+            }
+            for (Reaction reaction : selection != null ? selection.reactions : sbmlModel.getListOfReactions()) {
+                element(reaction, reaction.getName());
+                if (reaction.getReversible()) reversible.set(reactionCount);
+                reaction(reaction, fbc);
+                reactionCount++;
+            }
+            refOffsets.add(refSpecies.size());
+            gpaOffsets.add(gpaGenes.size());
+            operatorOffsets.add(operatorChildren.size());
+            if (fbc) {
+                for (GeneProduct geneProduct : selection != null ? selection.geneProducts : fbcModel.getListOfGeneProducts()) {
+                    element(geneProduct, geneProduct.getLabel());
+                    geneProductCount++;
+                }
+            }
+            annotationOffsets.add(qualifiers.size());
+            return new CompactModel(this);
+        }
+
+        private void reaction(Reaction reaction, boolean fbc) {
+            refOffsets.add(refSpecies.size());
+            for (SpeciesReference ref : reaction.getListOfReactants()) speciesRef(ref, REACTANT, ref.getStoichiometry());
+            for (SpeciesReference ref : reaction.getListOfProducts()) speciesRef(ref, PRODUCT, ref.getStoichiometry());
+            if (reaction.isSetListOfModifiers()) { //getListOfModifiers would create an empty list
+                for (ModifierSpeciesReference ref : reaction.getListOfModifiers()) speciesRef(ref, MODIFIER, Double.NaN);
+            }
+
+            gpaOffsets.add(gpaGenes.size());
+            Association association = null;
+            if (fbc && reaction.isSetPlugin("fbc")) { //getPlugin would create an empty plugin
+                FBCReactionPlugin fbcReaction = (FBCReactionPlugin) reaction.getPlugin("fbc");
+                if (fbcReaction.isSetGeneProductAssociation() && fbcReaction.getGeneProductAssociation().isSetAssociation()) {
+                    association = fbcReaction.getGeneProductAssociation().getAssociation();
+                }
+            }
+            if (association == null) {
+                reactionAssociations.add(NONE);
+            } else {
+                for (GeneProductRef ref : Convertor.parseGPA(association)) {
+                    gpaGenes.add(string(ref.getGeneProductInstance().getMetaId()));
+                }
+                reactionAssociations.add(associationTree(association));
+            }
+            reactionOperatorsEnd.add(operatorKeys.size());
+        }
+
+        private void speciesRef(SimpleSpeciesReference ref, byte role, double stoichiometry) {
+            Integer species = speciesIndex.get(ref.getSpecies());
+            if (species == null) throw new IllegalArgumentException("unknown species " + ref.getSpecies() + " in reaction " + ref.getParentSBMLObject().getParentSBMLObject());
+            int i = refSpecies.size();
+            if (i == refRoles.length) {
+                refRoles = Arrays.copyOf(refRoles, i * 2);
+                refStoichiometry = Arrays.copyOf(refStoichiometry, i * 2);
+            }
+            refSpecies.add(species);
+            boolean named = ref.getMetaId() != null && !ref.getMetaId().isBlank();
+            refMetaIds.add(named ? string(ref.getMetaId()) : NONE);
+            refIds.add(named ? string(ref.getId()) : NONE);
+            refRoles[i] = role;
+            refStoichiometry[i] = stoichiometry;
+        }
+
+        // add the operators of an and/or expression not seen yet, children first (see Convertor#convertAssociationTree),
+        // and return the node of its root
+        private int associationTree(Association root) {
+            List<Association> order = new ArrayList<>();
+            Deque<Association> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Association association = stack.pop();
+                order.add(association);
+                if (association instanceof LogicalOperator) {
+                    for (Association child : ((LogicalOperator) association).getListOfAssociations()) stack.push(child);
+                }
+            }
+            Map<Association, String> keys = new IdentityHashMap<>();
+            Map<Association, Integer> nodes = new IdentityHashMap<>();
+            for (int i = order.size() - 1; i >= 0; i--) {
+                Association association = order.get(i);
+                if (association instanceof GeneProductRef) {
+                    GeneProductRef ref = (GeneProductRef) association;
+                    keys.put(association, Convertor.gpaGeneKey(ref.getGeneProduct()));
+                    nodes.put(association, string(ref.getGeneProductInstance().getMetaId()));
+                } else if (association instanceof LogicalOperator) {
+                    List<Association> children = ((LogicalOperator) association).getListOfAssociations();
+                    List<String> childKeys = new ArrayList<>(children.size());
+                    for (Association child : children) childKeys.add(keys.get(child));
+                    String key = Convertor.gpaOperatorKey(association instanceof And, childKeys);
+                    Integer operator = operatorIndex.get(key);
+                    if (operator == null) {
+                        operator = operatorKeys.size();
+                        operatorIndex.put(key, operator);
+                        operatorKeys.add(string(key));
+                        if (association instanceof And) operatorAnd.set(operator);
+                        operatorOffsets.add(operatorChildren.size());
+                        for (Association child : children) operatorChildren.add(nodes.get(child));
+                    }
+                    keys.put(association, key);
+                    nodes.put(association, -operator - 1);
+                }
+            }
+            return nodes.get(root);
+        }
+    }
+}
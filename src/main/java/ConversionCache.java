@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An on-disk cache of conversion outputs, addressed by a hash of everything that determines the output: the SBML file
+ * content, the model URI, the conversion settings and the output format. A cached output is returned without parsing
+ * nor converting the SBML file. The least recently used entries are removed when the cache exceeds its size limit.
+ */
+public class ConversionCache {
+
+    private final Path directory;
+    private final long maxBytes;
+
+    /**
+     * @param directory the cache directory, created if needed
+     * @param maxBytes the maximum total size of the cached outputs
+     * @throws IOException if the directory can't be created
+     */
+    public ConversionCache(String directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(Paths.get(directory));
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Compute the key of a conversion
+     * @param inputPath the SBML file
+     * @param uri the URI of the model
+     * @param settings a description of the conversion settings and output format, see {@link ConversionPipeline#getSettingsKey()}
+     * @return the SHA-256 hash of the SBML content and the settings, in hexadecimal
+     * @throws IOException if the SBML file can't be read
+     */
+    public static String key(String inputPath, String uri, String settings) throws IOException {
+        MessageDigest digest = sha256(Paths.get(inputPath));
+        digest.update((byte) 0);
+        digest.update(uri.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @param file a file
+     * @return the SHA-256 hash of the file content, in hexadecimal
+     * @throws IOException if the file can't be read
+     */
+    public static String hash(Path file) throws IOException {
+        return HexFormat.of().formatHex(sha256(file).digest());
+    }
+
+    // a SHA-256 digest updated with the content of a file
+    private static MessageDigest sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            byte[] buffer = new byte[1 << 16];
+            while (in.read(buffer) != -1) ;
+        }
+        return digest;
+    }
+
+    /**
+     * Copy a cached output, if any, and mark the entry as recently used
+     * @param key the conversion key
+     * @param output the output file to write
+     * @return true if the output was cached, false otherwise
+     * @throws IOException if the output can't be written
+     */
+    public boolean fetch(String key, String output) throws IOException {
+        Path entry = directory.resolve(key);
+        try {
+            Files.copy(entry, Paths.get(output), StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Add a conversion output to the cache, then remove the least recently used entries if the cache is too large
+     * @param key the conversion key
+     * @param output the output file to cache
+     * @throws IOException if the output can't be copied
+     */
+    public synchronized void store(String key, String output) throws IOException {
+        Path tmp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            Files.copy(Paths.get(output), tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        evict();
+    }
+
+    // remove the least recently used entries until the cache fits in its size limit
+    private void evict() throws IOException {
+        List<Path> entries;
+        try (Stream<Path> files = Files.list(directory)) {
+            entries = files.filter(p -> !p.getFileName().toString().endsWith(".tmp")).collect(Collectors.toCollection(ArrayList::new));
+        }
+        long total = 0;
+        for (Path entry : entries) total += Files.size(entry);
+        entries.sort(Comparator.comparing(ConversionCache::lastModified));
+        for (Path entry : entries) {
+            if (total <= maxBytes) break;
+            total -= Files.size(entry);
+            Files.deleteIfExists(entry);
+        }
+    }
+
+    private static FileTime lastModified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
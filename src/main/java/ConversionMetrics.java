@@ -0,0 +1,151 @@
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonArray;
+import org.apache.jena.atlas.json.JsonNumber;
+import org.apache.jena.atlas.json.JsonObject;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Record the wall time, the memory allocated by the running thread and the number of statements added for each stage
+ * of a conversion (parsing, conversion of each kind of SBML entries, model enhancements...), and export them as a
+ * JSON report.
+ */
+public class ConversionMetrics {
+
+    /**
+     * A measured stage of the conversion, started by {@link #stage(String, LongSupplier)} and recorded when closed.
+     */
+    public class Stage implements AutoCloseable {
+        private final String name;
+        private final LongSupplier size;
+        private final long sizeBefore;
+        private final long allocBefore;
+        private final long start;
+
+        private Stage(String name, LongSupplier size) {
+            this.name = name;
+            this.size = size;
+            this.sizeBefore = size == null ? 0 : size.getAsLong();
+            this.allocBefore = allocatedBytes();
+            this.start = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            Measure m = new Measure();
+            m.name = name;
+            m.timeNanos = System.nanoTime() - start;
+            long allocAfter = allocatedBytes();
+            if (allocBefore >= 0 && allocAfter >= 0) m.allocatedBytes = allocAfter - allocBefore;
+            if (size != null) {
+                m.triples = size.getAsLong();
+                m.triplesAdded = m.triples - sizeBefore;
+            }
+            synchronized (measures) {
+                measures.add(m);
+            }
+        }
+    }
+
+    private static class Measure {
+        String name;
+        long timeNanos;
+        long allocatedBytes = -1;
+        long triplesAdded = -1;
+        long triples = -1;
+    }
+
+    private final List<Measure> measures = new ArrayList<>();
+    private final Map<String, String> info = new LinkedHashMap<>();
+    private final long created = System.nanoTime();
+
+    /**
+     * Start measuring a stage, which is recorded when the returned Stage is closed (typically in the finally block of
+     * the measured code). Stages must be started and closed by the same thread.
+     * @param name the name of the stage in the report
+     * @param size the size of the rdf graph the stage adds statements to, or null if not relevant
+     * @return the running stage
+     */
+    public Stage stage(String name, LongSupplier size) {
+        return new Stage(name, size);
+    }
+
+    /**
+     * Add a general information to the report (input file, model URI...)
+     * @param key the entry name
+     * @param value the entry value
+     */
+    public void setInfo(String key, String value) {
+        info.put(key, value);
+    }
+
+    /**
+     * @param name the name of a measured stage
+     * @return the number of statements added by the last stage with this name, or -1 if unknown
+     */
+    public long getTriplesAdded(String name) {
+        synchronized (measures) {
+            for (int i = measures.size() - 1; i >= 0; i--) {
+                if (measures.get(i).name.equals(name)) return measures.get(i).triplesAdded;
+            }
+        }
+        return -1;
+    }
+
+    // memory allocated by the current thread, if supported by the JVM
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the report as a JSON object
+     */
+    public JsonObject toJson() {
+        JsonObject report = new JsonObject();
+        info.forEach(report::put);
+        report.put("totalTimeMs", JsonNumber.value((System.nanoTime() - created) / 1_000_000.0));
+        JsonArray stages = new JsonArray();
+        synchronized (measures) {
+            for (Measure m : measures) {
+                JsonObject stage = new JsonObject();
+                stage.put("name", m.name);
+                stage.put("timeMs", JsonNumber.value(m.timeNanos / 1_000_000.0));
+                if (m.allocatedBytes >= 0) stage.put("allocatedBytes", m.allocatedBytes);
+                if (m.triples >= 0) {
+                    stage.put("triplesAdded", m.triplesAdded);
+                    stage.put("triples", m.triples);
+                }
+                stages.add(stage);
+            }
+        }
+        report.put("stages", stages);
+        return report;
+    }
+
+    /**
+     * Write the report as JSON
+     * @param path the report file
+     * @throws IOException if the file can't be written
+     */
+    public void write(String path) throws IOException {
+        try (OutputStream out = new FileOutputStream(path)) {
+            JSON.write(out, toJson());
+        }
+    }
+}
@@ -0,0 +1,717 @@
+import org.apache.jena.graph.Graph;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdfpatch.RDFChanges;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.lang.StreamRDFCounting;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.system.Txn;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SBMLReader;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The conversion of a SBML file into RDF followed by the optional model enhancements, as set from the CLI.
+ * A pipeline holds no state specific to a model, and can be shared by concurrent conversions.
+ * @author cfrainay
+ */
+public class ConversionPipeline {
+
+    //conversion settings
+    private boolean streaming = false;
+    private int conversionThreads = 1;
+    private int enhancementThreads = 1;
+    private Convertor.GPAMode gpaMode = Convertor.GPAMode.FLAT;
+    private SubsetFilter subset = new SubsetFilter();
+    private Path snapshots = null;
+    private boolean compact = false;
+    private boolean skolemize = false;
+    //enhancement settings
+    private boolean linkCompartments = false;
+    private boolean normalizeNames = false;
+    private Collection<String> sideCompounds = null;
+    private boolean addMetaboLinks = false;
+    private int derivesClosureDepth = 0;
+    private PropertyFiller.Engine engine = PropertyFiller.Engine.SPARQL;
+    //console print, null if silent
+    private PrintStream log = null;
+
+    /**
+     * @param streaming if the SBML file should be read with the {@link StreamingConvertor}
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * @param conversionThreads the number of threads used to convert the species and reactions of a model (with the
+     *                          {@link StreamingConvertor}, the chunks of the memory-mapped SBML file are also parsed in
+     *                          parallel)
+     */
+    public void setConversionThreads(int conversionThreads) {
+        this.conversionThreads = conversionThreads;
+    }
+
+    /**
+     * @param enhancementThreads the maximum number of independent enhancements run concurrently, 1 (the default) to run
+     *                           them one after the other directly on the model
+     */
+    public void setEnhancementThreads(int enhancementThreads) {
+        this.enhancementThreads = enhancementThreads;
+    }
+
+    /**
+     * @param gpaMode how the fbc gene product associations are converted
+     */
+    public void setGpaMode(Convertor.GPAMode gpaMode) {
+        this.gpaMode = gpaMode;
+    }
+
+    /**
+     * @param subset the criteria selecting the reactions to convert, with the elements they reference. A subset is
+     *               converted from the JSBML model, the streaming parser being only used to convert whole models
+     */
+    public void setSubset(SubsetFilter subset) {
+        this.subset = subset;
+    }
+
+    /**
+     * @param snapshots the directory of the snapshots of the SBML files parsed with JSBML (see {@link ModelSnapshot}),
+     *                  loaded instead of parsing a file with the same content, or null to always parse the files
+     */
+    public void setSnapshots(Path snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * @param compact if the JSBML model should be copied into a {@link CompactModel}, which is converted with the
+     *                selected enhancements in a single pass over its arrays, instead of enhancing the RDF model. The
+     *                streaming parser isn't used in this case
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * @param skolemize if the speciesRefs without metaId should be named with URIs derived from their reaction, role
+     *                  and position instead of blank nodes, so that patches can update them in a store
+     */
+    public void setSkolemize(boolean skolemize) {
+        this.skolemize = skolemize;
+    }
+
+    /**
+     * @param linkCompartments if links between same compounds in different compartments should be added
+     */
+    public void setLinkCompartments(boolean linkCompartments) {
+        this.linkCompartments = linkCompartments;
+    }
+
+    /**
+     * @param normalizeNames if compounds names should be compared ignoring case and surrounding white spaces when
+     *                       linking compartments
+     */
+    public void setNormalizeNames(boolean normalizeNames) {
+        this.normalizeNames = normalizeNames;
+    }
+
+    /**
+     * @param sideCompounds the side compounds identifiers to tag, or null
+     */
+    public void setSideCompounds(Collection<String> sideCompounds) {
+        this.sideCompounds = sideCompounds;
+    }
+
+    /**
+     * @param addMetaboLinks if links between reactants and products of the same reaction should be added
+     */
+    public void setAddMetaboLinks(boolean addMetaboLinks) {
+        this.addMetaboLinks = addMetaboLinks;
+    }
+
+    /**
+     * @param derivesClosureDepth the maximum number of reactions between two compounds linked by the materialized
+     *                            transitive "derives into" relation, 0 to not materialize it
+     */
+    public void setDerivesClosureDepth(int derivesClosureDepth) {
+        this.derivesClosureDepth = derivesClosureDepth;
+    }
+
+    /**
+     * @param engine the implementation used to build the extra statements, SPARQL queries by default
+     */
+    public void setEngine(PropertyFiller.Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * @param log where to print the conversion progress, or null for silent conversion
+     */
+    public void setLog(PrintStream log) {
+        this.log = log;
+    }
+
+    /**
+     * @return true if at least one model enhancement is selected
+     */
+    public boolean hasEnhancements() {
+        return linkCompartments || sideCompounds != null || addMetaboLinks || derivesClosureDepth > 0;
+    }
+
+    /**
+     * @return a description of the settings that determine the statements of an enhanced model (the choices of
+     * parser, engine and number of threads don't change the statements)
+     */
+    public String getSettingsKey() {
+        StringBuilder key = new StringBuilder()
+                .append("gpa=").append(gpaMode)
+                .append(";skolemize=").append(skolemize)
+                .append(";subset=").append(subset.getKey())
+                .append(";linkCompartments=").append(linkCompartments)
+                .append(";normalizeNames=").append(normalizeNames)
+                .append(";addMetaboLinks=").append(addMetaboLinks)
+                .append(";derivesClosure=").append(derivesClosureDepth)
+                .append(";sideCompounds=");
+        if(sideCompounds!=null) sideCompounds.stream().sorted().forEach(id -> key.append(id).append('\n'));
+        return key.toString();
+    }
+
+    /**
+     * Read a side compounds file, with one identifier per line
+     * @param inputpath the side compounds file
+     * @return the side compounds identifiers
+     * @throws IOException if the file can't be read
+     */
+    public static Set<String> parseSideCompoundsFile(String inputpath) throws IOException {
+        Set<String> sideCompounds = Files.lines(Paths.get(inputpath)).collect(Collectors.toSet());
+        return sideCompounds;
+    }
+
+    /**
+     * Add the prefixes of commonly used external identifiers
+     * @param prefixes the prefix mapping to complete
+     */
+    public static void addExternalPrefixes(PrefixMapping prefixes) {
+        prefixes.setNsPrefix("cid", "http://identifiers.org/pubchem.compound/");
+        prefixes.setNsPrefix("chebi", "http://identifiers.org/chebi/CHEBI:");
+        prefixes.setNsPrefix("mnxCHEM", "http://identifiers.org/metanetx.chemical/");
+    }
+
+    /**
+     * Add the prefixes of commonly used external identifiers
+     * @param stream the started stream to send the prefixes to
+     */
+    public static void addExternalPrefixes(StreamRDF stream) {
+        stream.prefix("cid", "http://identifiers.org/pubchem.compound/");
+        stream.prefix("chebi", "http://identifiers.org/chebi/CHEBI:");
+        stream.prefix("mnxCHEM", "http://identifiers.org/metanetx.chemical/");
+    }
+
+    private void print(String message) {
+        if (log != null) log.println(message);
+    }
+
+    // the streaming parser can't select a subset, nor build a compact model
+    private boolean useStreamingParser() {
+        return streaming && subset.isEmpty() && !compact;
+    }
+
+    /**
+     * Parse a SBML file and convert it into a new RDF model
+     * @param inputPath the SBML file
+     * @param uri the URI of the model
+     * @param metrics the metrics recorder
+     * @return the RDF model
+     */
+    public org.apache.jena.rdf.model.Model convert(String inputPath, String uri, ConversionMetrics metrics) throws IOException, XMLStreamException, InterruptedException {
+        org.apache.jena.rdf.model.Model rdf = ModelFactory.createDefaultModel();
+        convert(inputPath, uri, rdf, metrics);
+        return rdf;
+    }
+
+    /**
+     * Parse a SBML file and convert it into the given RDF model
+     * @param inputPath the SBML file
+     * @param uri the URI of the model
+     * @param rdf the RDF model to fill
+     * @param metrics the metrics recorder
+     */
+    public void convert(String inputPath, String uri, org.apache.jena.rdf.model.Model rdf, ConversionMetrics metrics) throws IOException, XMLStreamException, InterruptedException {
+        if(useStreamingParser() && conversionThreads > 1){
+            //parse and convert chunks of the memory-mapped SBML file in parallel
+            //-------------------------------------------------------------------
+            print("parallel streaming model conversion...");
+            StreamingConvertor convert = new StreamingConvertor(uri, StreamRDFLib.graph(rdf.getGraph()));
+            convert.setGpaMode(gpaMode);
+            convert.setSkolemize(skolemize);
+            ConversionMetrics.Stage streamingConversionStage = metrics.stage("streamingConversion", rdf::size);
+            try{
+                convert.runParallel(Paths.get(inputPath), conversionThreads);
+            }finally{
+                streamingConversionStage.close();
+            }
+            print("SBML file converted.");
+            print(convert.getCompartmentCount()+" Compartment");
+            print(convert.getSpeciesCount()+" Species");
+            print(convert.getReactionCount()+" Reactions");
+            print(rdf.size()+" triples");
+            return;
+        }
+        if(snapshots != null && !useStreamingParser()){
+            //parse SBML using JSBML library, or load the snapshot of a previous run
+            //-----------------------------------------------------------------------
+            convertJSBML(readModel(inputPath, metrics), uri, rdf, metrics);
+            print(rdf.size()+" triples");
+            return;
+        }
+        try(InputStream in = new FileInputStream(inputPath)){
+            convert(in, uri, rdf, metrics);
+        }
+    }
+
+    /**
+     * Parse a SBML document and convert it into the given RDF model
+     * @param in the SBML content, read until its end but not closed
+     * @param uri the URI of the model
+     * @param rdf the RDF model to fill
+     * @param metrics the metrics recorder
+     */
+    public void convert(InputStream in, String uri, org.apache.jena.rdf.model.Model rdf, ConversionMetrics metrics) throws XMLStreamException, InterruptedException {
+        if(useStreamingParser()){
+            //parse and convert SBML element by element
+            //-----------------------------------------
+            print("streaming model conversion...");
+            StreamingConvertor convert = new StreamingConvertor(uri, StreamRDFLib.graph(rdf.getGraph()));
+            convert.setGpaMode(gpaMode);
+            convert.setSkolemize(skolemize);
+            ConversionMetrics.Stage streamingConversionStage = metrics.stage("streamingConversion", rdf::size);
+            try{
+                convert.run(in);
+            }finally{
+                streamingConversionStage.close();
+            }
+            print("SBML file converted.");
+            print(convert.getCompartmentCount()+" Compartment");
+            print(convert.getSpeciesCount()+" Species");
+            print(convert.getReactionCount()+" Reactions");
+        }else{
+            //parse SBML using JSBML library
+            //------------------------------
+            print("parsing model...");
+            SBMLDocument doc;
+            ConversionMetrics.Stage parsingStage = metrics.stage("parsing", null);
+            try{
+                doc = new SBMLReader().readSBMLFromStream(in);
+            }finally{
+                parsingStage.close();
+            }
+            if(!doc.isSetModel()) throw new XMLStreamException("no model in the SBML document");
+            print("SBML file parsed.");
+            convertJSBML(doc.getModel(), uri, rdf, metrics); //JSBML model stores all data from SBML file
+        }
+        print(rdf.size()+" triples");
+    }
+
+    // convert a sbml model parsed with JSBML into the given RDF model, through a compact model if selected
+    private void convertJSBML(Model sbmlModel, String uri, org.apache.jena.rdf.model.Model rdf, ConversionMetrics metrics) throws InterruptedException {
+        if(compact){
+            StreamRDF out = StreamRDFLib.graph(rdf.getGraph());
+            out.start();
+            convertCompact(sbmlModel, uri, out, metrics);
+            out.finish();
+        }else{
+            convertModel(sbmlModel, uri, rdf, metrics);
+        }
+    }
+
+    // copy a sbml model parsed with JSBML into a compact model, then send its statements and the selected extra
+    // statements to a started stream
+    private void convertCompact(Model sbmlModel, String uri, StreamRDF out, ConversionMetrics metrics) {
+        print(sbmlModel.getCompartmentCount()+" Compartment");
+        print(sbmlModel.getSpeciesCount()+" Species");
+        print(sbmlModel.getReactionCount()+" Reactions");
+        StreamRDFCounting stream = StreamRDFLib.count(out);
+
+        print("\ncreating compact model...");
+        CompactModel model;
+        ConversionMetrics.Stage compactModelStage = metrics.stage("compactModel", null);
+        try{
+            model = CompactModel.fromModel(sbmlModel, uri, subset);
+            model.setSkolemize(skolemize);
+        }finally{
+            compactModelStage.close();
+        }
+        print(model.getStringCount()+" distinct strings");
+        if(sideCompounds!=null){
+            print("[enhance] "+sideCompounds.size()+" side compounds imported.");
+            ConversionMetrics.Stage importSideCompoundsStage = metrics.stage("importSideCompounds", null);
+            try{
+                print("[enhance] "+model.setSideCompounds(sideCompounds)+" side compounds found, tagging their participations");
+            }finally{
+                importSideCompoundsStage.close();
+            }
+        }
+
+        print("creating RDF statements...");
+        ConversionMetrics.Stage compactConversionStage = metrics.stage("compactConversion", stream::countTriples);
+        try{
+            model.write(stream, gpaMode);
+        }finally{
+            compactConversionStage.close();
+        }
+        if(linkCompartments){
+            print("[enhance] Harmonizing compartmentalized compound versions...");
+            ConversionMetrics.Stage harmonizeCompartmentsStage = metrics.stage("harmonizeCompartments", stream::countTriples);
+            try{
+                model.addCompartmentLinks(stream, false, normalizeNames);
+            }finally{
+                harmonizeCompartmentsStage.close();
+            }
+            print(metrics.getTriplesAdded("harmonizeCompartments")+" triples added");
+        }
+        if(addMetaboLinks){
+            print("[enhance] Adding compound-to-compound metabolic links"+(sideCompounds!=null ? ", ignoring side compounds..." : "..."));
+            ConversionMetrics.Stage addMetaboLinksStage = metrics.stage("addMetaboLinks", stream::countTriples);
+            try{
+                model.addMetaboLinks(stream, false);
+            }finally{
+                addMetaboLinksStage.close();
+            }
+            print(metrics.getTriplesAdded("addMetaboLinks")+" triples added");
+        }
+        if(derivesClosureDepth>0){
+            print("[enhance] Adding transitive compound-to-compound metabolic links, up to "+derivesClosureDepth+" reactions...");
+            ConversionMetrics.Stage derivesClosureStage = metrics.stage("derivesClosure", stream::countTriples);
+            try{
+                model.addDerivesClosure(stream, derivesClosureDepth);
+            }finally{
+                derivesClosureStage.close();
+            }
+            print(metrics.getTriplesAdded("derivesClosure")+" triples added");
+        }
+    }
+
+    // convert a sbml model parsed with JSBML into the given RDF model
+    private void convertModel(Model sbmlModel, String uri, org.apache.jena.rdf.model.Model rdf, ConversionMetrics metrics) throws InterruptedException {
+        print(sbmlModel.getCompartmentCount()+" Compartment");
+        print(sbmlModel.getSpeciesCount()+" Species");
+        print(sbmlModel.getReactionCount()+" Reactions");
+
+        //create RDF model using Jena library
+        //-----------------------------------
+        print("\ncreating RDF statements...");
+        Convertor convert;
+        ConversionMetrics.Stage convertModelStage = metrics.stage("convertModel", rdf::size);
+        try{
+            convert = new Convertor(sbmlModel, rdf, uri);
+            convert.setGpaMode(gpaMode);
+            convert.setSkolemize(skolemize);
+            convert.setSubset(subset);
+        }finally{
+            convertModelStage.close();
+        }
+        if(conversionThreads > 1){
+            ConversionMetrics.Stage runParallelStage = metrics.stage("runParallel", rdf::size);
+            try{
+                convert.runParallel(conversionThreads);
+            }finally{
+                runParallelStage.close();
+            }
+        }else{
+            ConversionMetrics.Stage convertCompartmentsStage = metrics.stage("convertCompartments", rdf::size);
+            try{
+                convert.convertCompartments();
+            }finally{
+                convertCompartmentsStage.close();
+            }
+            ConversionMetrics.Stage convertSpeciesStage = metrics.stage("convertSpecies", rdf::size);
+            try{
+                convert.convertSpecies();
+            }finally{
+                convertSpeciesStage.close();
+            }
+            ConversionMetrics.Stage convertReactionsStage = metrics.stage("convertReactions", rdf::size);
+            try{
+                convert.convertReactions();
+            }finally{
+                convertReactionsStage.close();
+            }
+            ConversionMetrics.Stage convertGenesStage = metrics.stage("convertGenes", rdf::size);
+            try{
+                convert.convertGenes();
+            }finally{
+                convertGenesStage.close();
+            }
+        }
+    }
+
+    // parse a SBML file using JSBML library, or load its snapshot if the snapshots directory has one for the same content
+    private Model readModel(String inputPath, ConversionMetrics metrics) throws IOException, XMLStreamException {
+        if(snapshots == null){
+            ConversionMetrics.Stage parsingStage = metrics.stage("parsing", null);
+            try{
+                return new SBMLReader().readSBMLFromFile(inputPath).getModel();
+            }finally{
+                parsingStage.close();
+            }
+        }
+        String hash;
+        Path snapshot;
+        Model sbmlModel = null;
+        ConversionMetrics.Stage loadSnapshotStage = metrics.stage("loadSnapshot", null);
+        try{
+            hash = ConversionCache.hash(Paths.get(inputPath));
+            snapshot = snapshots.resolve(hash + ".snapshot");
+            try {
+                sbmlModel = ModelSnapshot.read(snapshot, hash);
+            } catch (IOException e) {
+                print("invalid model snapshot, parsing the SBML file : " + e.getMessage());
+            }
+        }finally{
+            loadSnapshotStage.close();
+        }
+        if(sbmlModel != null){
+            print("model snapshot loaded.");
+            return sbmlModel;
+        }
+        print("parsing model...");
+        ConversionMetrics.Stage parsingStage = metrics.stage("parsing", null);
+        try{
+            sbmlModel = new SBMLReader().readSBMLFromFile(inputPath).getModel();
+        }finally{
+            parsingStage.close();
+        }
+        print("SBML file parsed.");
+        ConversionMetrics.Stage writeSnapshotStage = metrics.stage("writeSnapshot", null);
+        try{
+            Files.createDirectories(snapshots);
+            ModelSnapshot.write(sbmlModel, hash, snapshot);
+        }finally{
+            writeSnapshotStage.close();
+        }
+        return sbmlModel;
+    }
+
+    /**
+     * Convert a SBML file and send the statements to a started stream as they are created, without enhancements
+     * (unless a compact model is used, whose extra statements are sent after the model ones).
+     * @param inputPath the SBML file
+     * @param uri the URI of the model
+     * @param out the destination of the statements
+     * @param metrics the metrics recorder
+     * @return the number of statements sent
+     */
+    public long convertStreamed(String inputPath, String uri, StreamRDF out, ConversionMetrics metrics) throws IOException, XMLStreamException, InterruptedException {
+        StreamRDFCounting stream = StreamRDFLib.count(out);
+        if(useStreamingParser()){
+            ConversionMetrics.Stage streamingConversionStage = metrics.stage("streamingConversion", stream::countTriples);
+            try{
+                StreamingConvertor convert = new StreamingConvertor(uri, stream);
+                convert.setGpaMode(gpaMode);
+                convert.setSkolemize(skolemize);
+                if(conversionThreads > 1){
+                    convert.runParallel(Paths.get(inputPath), conversionThreads);
+                }else{
+                    try(InputStream in = new FileInputStream(inputPath)){
+                        convert.run(in);
+                    }
+                }
+            }finally{
+                streamingConversionStage.close();
+            }
+        }else if(compact){
+            convertCompact(readModel(inputPath, metrics), uri, stream, metrics);
+        }else{
+            Model sbmlModel = readModel(inputPath, metrics);
+            ConversionMetrics.Stage convertStage = metrics.stage("convert", stream::countTriples);
+            try{
+                Convertor convert = new Convertor(sbmlModel, stream, uri);
+                convert.setGpaMode(gpaMode);
+                convert.setSkolemize(skolemize);
+                convert.setSubset(subset);
+                if(conversionThreads > 1) convert.runParallel(conversionThreads);
+                else convert.run();
+            }finally{
+                convertStage.close();
+            }
+        }
+        return stream.countTriples();
+    }
+
+    /**
+     * Convert a SBML file into a named graph of a transactional dataset (such as a TDB2 store), replacing the previous
+     * content of this graph, then add the selected extra statements to it. The statements are loaded into a staging
+     * graph in batches of write transactions (see {@link DatasetLoader}). The enhancements are then run one after the
+     * other against the staging graph in a read transaction, their statements being kept in memory and loaded in
+     * batches as well. The staging graph finally replaces the stored graph, which is kept if the conversion fails.
+     * @param inputPath the SBML file
+     * @param uri the URI of the model, used as graph name
+     * @param dataset the dataset
+     * @param metrics the metrics recorder
+     * @return the number of statements in the stored graph
+     */
+    public long convertToStore(String inputPath, String uri, Dataset dataset, ConversionMetrics metrics) throws IOException, XMLStreamException, InterruptedException {
+        DatasetLoader loader = new DatasetLoader(dataset, uri);
+        boolean loaded = false;
+        try {
+            print("loading RDF statements into the store...");
+            loader.start();
+            addExternalPrefixes(loader);
+            convertStreamed(inputPath, uri, loader, metrics);
+            loader.flush();
+            print(loader.getLoaded()+" triples loaded");
+
+            if(hasEnhancements() && !compact){
+                //the stored graph can only be read by the thread of the transaction
+                Graph added = GraphFactory.createGraphMem();
+                PrefixMapping prefixes = Txn.calculateRead(dataset, () ->
+                        enhancements(metrics).run(dataset.getNamedModel(loader.getStagingGraphURI()).getGraph(), added));
+                prefixes.getNsPrefixMap().forEach(loader::prefix);
+                added.find().forEachRemaining(loader::triple);
+            }
+            loader.finish();
+            loaded = true;
+        } finally {
+            if(!loaded) loader.abort();
+        }
+        return Txn.calculateRead(dataset, () -> dataset.getNamedModel(uri).size());
+    }
+
+    /**
+     * @param path a file describing a model
+     * @return true if the file is a SBML file (.xml or .sbml extension), false if it is a RDF file
+     */
+    public static boolean isSBML(String path) {
+        return path.endsWith(".xml") || path.endsWith(".sbml");
+    }
+
+    /**
+     * Compute the changes between the conversion of a previous version of a model and the conversion of a SBML file.
+     * If the previous version is a SBML file, only the elements that changed are converted, without enhancements.
+     * Otherwise, the previous version is a RDF file (typically a previous output), which is compared to the whole
+     * conversion of the SBML file, with the selected enhancements. Structured gene associations and subsets require a
+     * previous RDF file.
+     * @param previousPath the previous SBML file, or the previous RDF file
+     * @param inputPath the new SBML file
+     * @param uri the URI of the model
+     * @param out the destination of the changes, started by the caller
+     * @param metrics the metrics recorder
+     * @return the computed diff, with the number of changes
+     */
+    public ModelDiff convertPatch(String previousPath, String inputPath, String uri, RDFChanges out, ConversionMetrics metrics) throws IOException, XMLStreamException, InterruptedException {
+        ModelDiff diff = new ModelDiff(uri);
+        diff.setSkolemize(skolemize);
+        if(isSBML(previousPath) && gpaMode != Convertor.GPAMode.FLAT){
+            //and/or resources are shared between reactions, they can't be deleted with a single reaction
+            throw new IllegalArgumentException("structured gene associations require the previous version to be a RDF file");
+        }
+        if(isSBML(previousPath) && !subset.isEmpty()){
+            throw new IllegalArgumentException("a subset requires the previous version to be a RDF file");
+        }
+        if(isSBML(previousPath)){
+            print("parsing models...");
+            Model previous, current;
+            ConversionMetrics.Stage parsingStage = metrics.stage("parsing", null);
+            try{
+                previous = new SBMLReader().readSBMLFromFile(previousPath).getModel();
+                current = new SBMLReader().readSBMLFromFile(inputPath).getModel();
+            }finally{
+                parsingStage.close();
+            }
+            ConversionMetrics.Stage diffStage = metrics.stage("diff", null);
+            try{
+                diff.diff(previous, current, out);
+            }finally{
+                diffStage.close();
+            }
+        }else{
+            org.apache.jena.rdf.model.Model previous;
+            ConversionMetrics.Stage loadPreviousStage = metrics.stage("loadPrevious", null);
+            try{
+                previous = RDFDataMgr.loadModel(previousPath);
+            }finally{
+                loadPreviousStage.close();
+            }
+            org.apache.jena.rdf.model.Model current = convert(inputPath, uri, metrics);
+            enhance(current, metrics);
+            ConversionMetrics.Stage diffStage = metrics.stage("diff", null);
+            try{
+                diff.diff(previous, current, out);
+            }finally{
+                diffStage.close();
+            }
+        }
+        print(diff.getChangedElements()+" changed elements");
+        print(diff.getAdded()+" triples added, "+diff.getDeleted()+" triples deleted");
+        return diff;
+    }
+
+    /**
+     * Add the selected extra statements to a converted model (already done by the conversion of a compact model). With
+     * several enhancement threads, the independent enhancements are run concurrently (see {@link EnhancementScheduler}).
+     * @param rdf the converted model
+     * @param metrics the metrics recorder
+     * @throws InterruptedException if interrupted while waiting for the concurrent enhancements
+     */
+    public void enhance(org.apache.jena.rdf.model.Model rdf, ConversionMetrics metrics) throws InterruptedException {
+        if(compact){
+            //the extra statements were added with the compact model conversion
+            addExternalPrefixes(rdf);
+            return;
+        }
+        // [optional] add extra links:
+        //----------------------------
+        if(hasEnhancements()) print("[enhance] adding extra triples:");
+        enhancements(metrics).run(rdf, enhancementThreads);
+        addExternalPrefixes(rdf);
+    }
+
+    // the selected enhancements, the metabolic links depending on the side compounds typing
+    private EnhancementScheduler enhancements(ConversionMetrics metrics) {
+        EnhancementScheduler scheduler = new EnhancementScheduler(metrics, this::print);
+        //      [optional] add links between compartments' compounds
+        //----------------------------------------------------------
+        if(linkCompartments){
+            scheduler.add("harmonizeCompartments", "[enhance] Harmonizing compartmentalized compound versions...",
+                    rdf -> PropertyFiller.harmonizeCompartments(rdf,false,engine,normalizeNames));
+        }
+        //      [optional] tag side compounds from file
+        //---------------------------------------------
+        String[] sideTyping = {};
+        if(sideCompounds!=null){
+            print("[enhance] "+sideCompounds.size()+" side compounds imported.");
+            scheduler.add("importSideCompounds", "[enhance] Tagging reactions' side reactants and side products...",
+                    rdf -> PropertyFiller.importSideCompounds(rdf,sideCompounds,engine));
+            sideTyping = new String[]{"importSideCompounds"};
+        }
+        //      [optional] add compound-to-compound metabolic relationship
+        //----------------------------------------------------------------
+        if(addMetaboLinks){
+            String message = sideCompounds!=null ? "[enhance] Adding compound-to-compound metabolic links, ignoring side compounds..." :
+                    "[enhance] Adding compound-to-compound metabolic links...";
+            scheduler.add("addMetaboLinks", message, rdf -> PropertyFiller.addMetaboLinks(rdf,false,engine), sideTyping);
+        }
+        //      [optional] materialize the transitive compound-to-compound relationship
+        //-----------------------------------------------------------------------------
+        if(derivesClosureDepth>0){
+            scheduler.add("derivesClosure", "[enhance] Adding transitive compound-to-compound metabolic links, up to "+derivesClosureDepth+" reactions...",
+                    rdf -> PropertyFiller.addDerivesClosure(rdf,derivesClosureDepth), sideTyping);
+        }
+        return scheduler;
+    }
+}
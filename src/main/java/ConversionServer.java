@@ -0,0 +1,238 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFLanguages;
+import org.sbml.jsbml.xml.XMLException;
+
+import javax.xml.stream.XMLStreamException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A long-running HTTP conversion service, avoiding the JVM, Jena and JSBML startup costs for each model.
+ * POST /convert with the SBML document as body, and the following query parameters:
+ * uri (required), linkCompartments, addMetaboLinks, sideCompounds (boolean flags, the side compounds list being loaded
+ * at startup), gpa (a {@link Convertor.GPAMode} name) and format (an {@link OutputFormat} name, turtle by default).
+ * The response is the converted model, or a 400 status if the document can't be parsed as SBML, or a 500 status if
+ * its conversion failed, the cause being printed on the error log.
+ * GET /health answers "ok".
+ * Conversions are run by a fixed pool of threads; beyond a maximum number of requests in progress (converting or
+ * waiting for a conversion thread), new requests are rejected with a 503 status.
+ */
+public class ConversionServer {
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ExecutorService workers;
+    private final Semaphore inFlight;
+    private final boolean streaming;
+    private final PropertyFiller.Engine engine;
+    private final Collection<String> sideCompounds;
+    private Convertor.GPAMode gpaMode = Convertor.GPAMode.FLAT;
+    private PrintStream log = null;
+    private PrintStream errorLog = System.err;
+
+    /**
+     * @param port the port to listen to
+     * @param threads the number of conversions run concurrently
+     * @param maxInFlight the maximum number of requests in progress
+     * @param streaming if the SBML documents should be read with the {@link StreamingConvertor}
+     * @param engine the implementation of the enhancements
+     * @param sideCompounds the side compounds identifiers, used by requests with sideCompounds=true, or null
+     * @throws IOException if the server can't listen to the port
+     */
+    public ConversionServer(int port, int threads, int maxInFlight, boolean streaming, PropertyFiller.Engine engine,
+                            Collection<String> sideCompounds) throws IOException {
+        this.streaming = streaming;
+        this.engine = engine;
+        this.sideCompounds = sideCompounds;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.workers = Executors.newFixedThreadPool(threads);
+        //requests are received on their own thread, which waits for the conversion or is rejected
+        this.handlers = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(handlers);
+        server.createContext("/convert", this::handleConvert);
+        server.createContext("/health", exchange -> respond(exchange, 200, "text/plain", "ok"));
+    }
+
+    /**
+     * @param log where to print the requests, or null for silent service
+     */
+    public void setLog(PrintStream log) {
+        this.log = log;
+    }
+
+    /**
+     * @param errorLog where to print the failed conversions (the standard error output by default), or null to ignore them
+     */
+    public void setErrorLog(PrintStream errorLog) {
+        this.errorLog = errorLog;
+    }
+
+    /**
+     * @param gpaMode the default conversion of the gene associations, overridden by the gpa parameter of the requests
+     */
+    public void setGpaMode(Convertor.GPAMode gpaMode) {
+        this.gpaMode = gpaMode;
+    }
+
+    /**
+     * Start listening to requests, in background threads
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop the server, waiting at most the given delay for the requests in progress
+     * @param delaySeconds the maximum delay
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        workers.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    /**
+     * @return the port the server listens to
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleConvert(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "text/plain", "POST a SBML document");
+                return;
+            }
+            if (!inFlight.tryAcquire()) {
+                respond(exchange, 503, "text/plain", "too many requests in progress");
+                return;
+            }
+            try {
+                convert(exchange, body);
+            } finally {
+                inFlight.release();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void convert(HttpExchange exchange, InputStream body) throws IOException {
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        String uri = params.get("uri");
+        if (uri == null || uri.isBlank()) {
+            respond(exchange, 400, "text/plain", "missing uri parameter");
+            return;
+        }
+        OutputFormat format;
+        try {
+            format = OutputFormat.valueOf(params.getOrDefault("format", OutputFormat.TURTLE.name()).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, "text/plain", "unknown format " + params.get("format"));
+            return;
+        }
+        Convertor.GPAMode gpa;
+        try {
+            gpa = params.containsKey("gpa") ? Convertor.GPAMode.valueOf(params.get("gpa").toUpperCase()) : gpaMode;
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, "text/plain", "unknown gpa mode " + params.get("gpa"));
+            return;
+        }
+        if (flag(params, "sideCompounds") && sideCompounds == null) {
+            respond(exchange, 400, "text/plain", "no side compounds list loaded by the server");
+            return;
+        }
+
+        ConversionPipeline pipeline = new ConversionPipeline();
+        pipeline.setStreaming(streaming);
+        pipeline.setEngine(engine);
+        pipeline.setGpaMode(gpa);
+        pipeline.setLinkCompartments(flag(params, "linkCompartments"));
+        pipeline.setAddMetaboLinks(flag(params, "addMetaboLinks"));
+        if (flag(params, "sideCompounds")) pipeline.setSideCompounds(sideCompounds);
+
+        Future<org.apache.jena.rdf.model.Model> conversion = workers.submit(() -> {
+            ConversionMetrics metrics = new ConversionMetrics();
+            org.apache.jena.rdf.model.Model rdf = ModelFactory.createDefaultModel();
+            pipeline.convert(body, uri, rdf, metrics);
+            pipeline.enhance(rdf, metrics);
+            return rdf;
+        });
+        org.apache.jena.rdf.model.Model rdf;
+        try {
+            rdf = conversion.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof XMLStreamException || cause instanceof XMLException) {
+                //the document can't be parsed or isn't valid SBML
+                if (log != null) log.println(uri + " : invalid SBML document, " + cause);
+                respond(exchange, 400, "text/plain", "invalid SBML document: " + describe(cause));
+            } else {
+                if (errorLog != null) errorLog.println(uri + " : conversion failed, " + cause);
+                respond(exchange, 500, "text/plain", "conversion failed: " + describe(cause));
+            }
+            return;
+        } catch (InterruptedException e) {
+            conversion.cancel(true);
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "text/plain", "conversion interrupted");
+            return;
+        }
+
+        String contentType = RDFLanguages.fileExtToLang(format.getExtension()).getContentType().getContentTypeStr();
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.getResponseHeaders().set("X-Triples", Long.toString(rdf.size()));
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            format.write(out, rdf);
+        }
+        if (log != null) log.println(uri + " : " + rdf.size() + " triples");
+    }
+
+    private static String describe(Throwable cause) {
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    private static boolean flag(Map<String, String> params, String name) {
+        return Boolean.parseBoolean(params.getOrDefault(name, "false"));
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) return params;
+        for (String param : query.split("&")) {
+            int eq = param.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? param : param.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "true" : URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -2,14 +2,19 @@ import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Property;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import org.sbml.jsbml.*;
 import org.sbml.jsbml.ext.fbc.*;
 import vocabulary.SBMLRDF;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The Class Convertor extract the relationships between biological entities as described in a SBML modeling file, and
@@ -18,6 +23,12 @@ import java.util.Set;
  */
 public class Convertor {
 
+    /**
+     * The conversion of the fbc gene product associations: direct links from the reactions to all their gene products,
+     * the and/or expression as a tree of resources (identical sub-expressions being shared across reactions), or both
+     */
+    public enum GPAMode { FLAT, STRUCTURED, BOTH }
+
     //Namespaces
     private String modelNamespace;
     private final String modelPrefix = "model";
@@ -30,6 +41,17 @@ public class Convertor {
     //the resource representing the sbml model;
     Resource sbmlResource;
 
+    // interned resources, to create a single resource per sbml element (by metaId), annotation URI and qualifier
+    private final Map<String, Resource> elementResources = new HashMap<>();
+    private final Map<String, Resource> annotationResources = new HashMap<>();
+    private final Map<CVTerm.Qualifier, Property> qualifierProperties = new EnumMap<>(CVTerm.Qualifier.class);
+    private final Map<String, Resource> gpaResources = new HashMap<>();
+    private String fbcNS = null;
+    private GPAMode gpaMode = GPAMode.FLAT;
+    private boolean skolemize = false;
+    //the elements to convert, null to convert the whole model
+    private SubsetFilter.Selection subset = null;
+
     /**
      * The Convertor requires a JSBML sbml model and a JENA rdf model (which can be empty).
      * The Convertor also requires a URI (Uniform Resource Identifiers) that uniquely identify the model
@@ -67,9 +89,65 @@ public class Convertor {
         this(sbmlModel, ModelFactory.createDefaultModel(),modelURI);
     }
 
+    /**
+     * The Convertor can also send its statements to a JENA StreamRDF (such as a serializer) instead of storing them
+     * in a rdf model. The stream must be started before creating the Convertor, and finished by the caller after
+     * the conversion. In this case, the rdf model returned by {@link #getRdfModel()} can't be queried, and the stream
+     * can contain duplicate statements (see {@link StreamRDFGraph}).
+     *
+     * @param sbmlModel a sbml model
+     * @param out the destination of the statements
+     * @param modelURI the URI of the model
+     */
+    public Convertor(org.sbml.jsbml.Model sbmlModel, StreamRDF out, String modelURI) {
+        this(sbmlModel, ModelFactory.createModelForGraph(new StreamRDFGraph(out)), modelURI);
+    }
+
+    // Create a Convertor writing in a separate rdf model, sharing the parent's sbml model and namespace, used to convert
+    // a chunk of the sbml entries in parallel. The model resource is referenced but not described again.
+    private Convertor(Convertor parent, org.apache.jena.rdf.model.Model chunkModel) {
+        this.sbmlModel = parent.sbmlModel;
+        this.modelNamespace = parent.modelNamespace;
+        this.rdfModel = chunkModel;
+        this.sbmlResource = chunkModel.createResource(parent.sbmlResource.getURI());
+        this.fbcNS = parent.fbcNS;
+        this.gpaMode = parent.gpaMode;
+        this.skolemize = parent.skolemize;
+    }
+
+    /**
+     * @param gpaMode how the gene product associations are converted, flat links by default
+     */
+    public void setGpaMode(GPAMode gpaMode) {
+        this.gpaMode = gpaMode;
+    }
+
+    /**
+     * @param skolemize if the speciesRefs without metaId should be named with URIs derived from their reaction, role
+     *                  and position (see {@link #speciesRefURI(String, String, int)}) instead of blank nodes, so that
+     *                  their statements can be identified across conversions
+     */
+    public void setSkolemize(boolean skolemize) {
+        this.skolemize = skolemize;
+    }
+
+    /**
+     * Convert only a slice of the sbml model: the reactions selected by the filter and the elements they reference.
+     * The other elements are not visited by the conversion.
+     * @param filter the selection criteria, the whole model being converted if no criteria are set
+     */
+    public void setSubset(SubsetFilter filter) {
+        this.subset = filter.isEmpty() ? null : filter.select(sbmlModel);
+    }
+
+    // Get the Resource of a sbml element from its metaId, using predefined base URI
+    private Resource getResource(String metaId){
+        return elementResources.computeIfAbsent(metaId, id -> rdfModel.createResource(modelNamespace + id));
+    }
+
     // Generate a Resource from a sbml id, using predefined base URI
     private Resource initResource(AbstractSBase sbmlEntry){
-        Resource node = rdfModel.createResource(modelNamespace + sbmlEntry.getMetaId());
+        Resource node = getResource(sbmlEntry.getMetaId());
         node.addProperty(RDFS.label,sbmlEntry.getId());
         return node;
     }
@@ -94,50 +172,65 @@ public class Convertor {
         Resource specie = initResource(sbmlSpecie);
         specie.addProperty(RDF.type, SBMLRDF.SPECIE);
         specie.addProperty(SBMLRDF.NAME,sbmlSpecie.getName());
-        specie.addProperty(SBMLRDF.HAS_COMPARTMENT,rdfModel.createResource(modelNamespace + sbmlSpecie.getCompartmentInstance().getMetaId()));
+        specie.addProperty(SBMLRDF.HAS_COMPARTMENT,getResource(sbmlSpecie.getCompartmentInstance().getMetaId()));
         createAnnotation(specie,sbmlSpecie);
         return specie;
     }
 
-    private Resource createSpeciesReferenceResource(SpeciesReference sbmlSpecieRef){
+    private Resource createSpeciesReferenceResource(SpeciesReference sbmlSpecieRef, Resource reaction, String role, int index){
         Resource specieRef;
         if(sbmlSpecieRef.getMetaId() == null || sbmlSpecieRef.getMetaId().isBlank()){
-            //create blank node
-            specieRef=rdfModel.createResource();
+            //create blank node, or skolem URI
+            specieRef = skolemize ? rdfModel.createResource(speciesRefURI(reaction.getURI(), role, index)) : rdfModel.createResource();
         }else{
             specieRef = initResource(sbmlSpecieRef);
 
         }
         specieRef.addProperty(RDF.type, SBMLRDF.SPECIESREF);
         specieRef.addLiteral(SBMLRDF.STOICHIOMETRY, sbmlSpecieRef.getStoichiometry());
-        specieRef.addProperty(SBMLRDF.HAS_SPECIE,rdfModel.createResource(modelNamespace + sbmlSpecieRef.getSpeciesInstance().getMetaId()));
+        specieRef.addProperty(SBMLRDF.HAS_SPECIE,getResource(sbmlSpecieRef.getSpeciesInstance().getMetaId()));
         return specieRef;
     }
 
+    private Resource createModifierReferenceResource(ModifierSpeciesReference sbmlModifier, Resource reaction, int index){
+        Resource modifierRef;
+        if(sbmlModifier.getMetaId() == null || sbmlModifier.getMetaId().isBlank()){
+            //create blank node, or skolem URI
+            modifierRef = skolemize ? rdfModel.createResource(speciesRefURI(reaction.getURI(), "modifier", index)) : rdfModel.createResource();
+        }else{
+            modifierRef = initResource(sbmlModifier);
+        }
+        modifierRef.addProperty(RDF.type, SBMLRDF.MODIFIERSPECIESREF);
+        modifierRef.addProperty(SBMLRDF.HAS_SPECIE,getResource(sbmlModifier.getSpeciesInstance().getMetaId()));
+        return modifierRef;
+    }
+
     private Resource createReactionResource(Reaction sbmlReaction){
         Resource reaction = initResource(sbmlReaction);
         reaction.addProperty(RDF.type, SBMLRDF.REACTION);
         reaction.addProperty(SBMLRDF.NAME,sbmlReaction.getName());
         reaction.addLiteral(SBMLRDF.REVERSIBLE,sbmlReaction.getReversible());
 
-        for(SpeciesReference sbmlReactant : sbmlReaction.getListOfReactants()){
-            Resource specieRef = createSpeciesReferenceResource(sbmlReactant);
+        //getListOf* would create and register an empty list, modifying the sbml model shared by the conversion threads
+        List<SpeciesReference> reactants = sbmlReaction.isSetListOfReactants() ? sbmlReaction.getListOfReactants() : List.of();
+        for(int i = 0; i < reactants.size(); i++){
+            Resource specieRef = createSpeciesReferenceResource(reactants.get(i), reaction, "reactant", i);
             reaction.addProperty(SBMLRDF.REACTANT,specieRef);
         }
 
-        for(SpeciesReference sbmlProduct : sbmlReaction.getListOfProducts()){
-            Resource specieRef = createSpeciesReferenceResource(sbmlProduct);
+        List<SpeciesReference> products = sbmlReaction.isSetListOfProducts() ? sbmlReaction.getListOfProducts() : List.of();
+        for(int i = 0; i < products.size(); i++){
+            Resource specieRef = createSpeciesReferenceResource(products.get(i), reaction, "product", i);
             reaction.addProperty(SBMLRDF.PRODUCT,specieRef);
         }
 
-//TODO    parse modifiers
-//
-//            for(ModifierSpeciesReference sbmlModifier : sbmlReaction.getListOfModifiers()){
-//                Resource specieRef = initResource(sbmlModifier.getSpeciesInstance());
-//                specieRef.addProperty(SBMLRDF.HAS_SPECIE,rdfModel.getResource(sbmlModifier.getMetaId()));
-//
-//                reaction.addProperty(SBMLRDF.MODIFIER,specieRef);
-//            }
+        if(sbmlReaction.isSetListOfModifiers()){ //getListOfModifiers would create an empty list
+            List<ModifierSpeciesReference> modifiers = sbmlReaction.getListOfModifiers();
+            for(int i = 0; i < modifiers.size(); i++){
+                Resource modifierRef = createModifierReferenceResource(modifiers.get(i), reaction, i);
+                reaction.addProperty(SBMLRDF.MODIFIER,modifierRef);
+            }
+        }
 
         createAnnotation(reaction, sbmlReaction);
 
@@ -146,12 +239,14 @@ public class Convertor {
 
     //parse the sbml annotations (bqbiol:is)
     private void createAnnotation(Resource resource, SBase sbmlElement){
+        if(!sbmlElement.isSetAnnotation()) return; //avoid JSBML creating an empty annotation
         Annotation sbmlAnnot = sbmlElement.getAnnotation();
         for(CVTerm term : sbmlAnnot.getListOfCVTerms()){
             if(term.isBiologicalQualifier()) {
-                Property p = ResourceFactory.createProperty(SBMLRDF.BQURI, term.getQualifier().getElementNameEquivalent());
+                Property p = qualifierProperties.computeIfAbsent(term.getQualifier(),
+                        q -> ResourceFactory.createProperty(SBMLRDF.BQURI, q.getElementNameEquivalent()));
                 for (String resourceURI : term.getResources()) {
-                    resource.addProperty(p, rdfModel.createResource(resourceURI));
+                    resource.addProperty(p, annotationResources.computeIfAbsent(resourceURI, rdfModel::createResource));
                 }
             }
         }
@@ -161,8 +256,12 @@ public class Convertor {
      * Convert the compartment descriptions in RDF and add them in the RDF model
      */
     public void convertCompartments(){
+        convertCompartments(subset != null ? subset.compartments : sbmlModel.getListOfCompartments());
+    }
+
+    private void convertCompartments(List<Compartment> compartmentList){
 
-        for( Compartment sbmlCompartment : sbmlModel.getListOfCompartments()){
+        for( Compartment sbmlCompartment : compartmentList){
             Resource compartment = createCompartmentResource(sbmlCompartment);
             sbmlResource.addProperty(SBMLRDF.HAS_COMPARTMENT, compartment);
         }
@@ -172,77 +271,193 @@ public class Convertor {
      * Convert the species descriptions in RDF and add them in the RDF model
      */
     public void convertSpecies(){
+        convertSpecies(speciesToConvert());
+    }
+
+    private List<Species> speciesToConvert(){
+        return subset != null ? subset.species : sbmlModel.getListOfSpecies();
+    }
 
-        for( Species sbmlSpecie : sbmlModel.getListOfSpecies()){
+    private void convertSpecies(List<Species> speciesList){
+
+        for( Species sbmlSpecie : speciesList){
             Resource specie = createSpeciesResource(sbmlSpecie);
             sbmlResource.addProperty(SBMLRDF.HAS_SPECIE, specie);
         }
     }
 
     /**
-     * Convert the reactions descriptions in RDF and add them in the RDF model
+     * Convert the reactions descriptions in RDF and add them in the RDF model, with their participants, modifiers and
+     * gene product associations (from the fbc package) in a single pass over the reactions.
      */
     public void convertReactions(){
+        convertReactions(reactionsToConvert());
+    }
 
-        for( Reaction sbmlReaction : sbmlModel.getListOfReactions()){
+    private List<Reaction> reactionsToConvert(){
+        return subset != null ? subset.reactions : sbmlModel.getListOfReactions();
+    }
+
+    private void convertReactions(List<Reaction> reactionList){
+        boolean fbc = sbmlModel.isPackageEnabled("fbc");
+        for( Reaction sbmlReaction : reactionList){
             Resource reaction = createReactionResource(sbmlReaction);
             sbmlResource.addProperty(SBMLRDF.HAS_REACTION, reaction);
+            if(fbc) convertGeneAssociations(sbmlReaction, reaction);
         }
     }
 
     /**
-     * Convert the genes descriptions (from the fbc package) in RDF and add them in the RDF model.
+     * Convert the genes descriptions (from the fbc package) in RDF and add them in the RDF model. The associations
+     * between reactions and gene products are converted with the reactions, see {@link #convertReactions()}.
      */
     public void convertGenes(){
 
         if(this.sbmlModel.isPackageEnabled("fbc")){
             FBCModelPlugin fbcParser = (FBCModelPlugin) this.sbmlModel.getPlugin("fbc");
-            String fbcNS=fbcParser.getURI()+"#";
+            fbcNamespace(); //declare the fbc prefix
+
+            for (GeneProduct sbmlGene : subset != null ? subset.geneProducts : fbcParser.getListOfGeneProducts()){
+                convertGeneProduct(sbmlGene);
+            }
+
+        }
+
+    }
+
+    // the namespace of the fbc package, declared as prefix in the rdf model on first use
+    private String fbcNamespace(){
+        if(fbcNS == null){
+            fbcNS = ((FBCModelPlugin) this.sbmlModel.getPlugin("fbc")).getURI()+"#";
             rdfModel.setNsPrefix("fbc",fbcNS);
-            Property geneProductAssociation = rdfModel.createProperty(fbcNS,"geneProductAssociation");
-            Resource geneProduct = rdfModel.createProperty(fbcNS+"geneProduct");
+        }
+        return fbcNS;
+    }
 
+    private void convertGeneProduct(GeneProduct sbmlGene){
+        Resource geneProduct = rdfModel.createResource(fbcNamespace()+"geneProduct");
+        Resource gene = initResource(sbmlGene);
+        gene.addProperty(RDF.type, geneProduct);
+        gene.addProperty(SBMLRDF.NAME,sbmlGene.getLabel());
+        createAnnotation(gene,sbmlGene);
+    }
 
-            for (GeneProduct sbmlGene : fbcParser.getListOfGeneProducts()){
-                Resource gene = initResource(sbmlGene);
-                gene.addProperty(RDF.type, geneProduct);
-                gene.addProperty(SBMLRDF.NAME,sbmlGene.getLabel());
-                createAnnotation(gene,sbmlGene);
+    private void convertGeneAssociations(Reaction sbmlReaction, Resource reaction){
+        if(!sbmlReaction.isSetPlugin("fbc")) return; //getPlugin would create an empty plugin
+        FBCReactionPlugin rxnFbcParser = (FBCReactionPlugin) sbmlReaction.getPlugin("fbc");
+        if(rxnFbcParser.isSetGeneProductAssociation() && rxnFbcParser.getGeneProductAssociation().isSetAssociation()){
+            Association association = rxnFbcParser.getGeneProductAssociation().getAssociation();
+            if(gpaMode != GPAMode.STRUCTURED){
+                Property geneProductAssociation = rdfModel.createProperty(fbcNamespace(),"geneProductAssociation");
+                for(GeneProductRef sbmlGeneRef : parseGPA(association)){
+                    Resource gene = getResource(sbmlGeneRef.getGeneProductInstance().getMetaId());
+                    reaction.addProperty(geneProductAssociation, gene);
+                }
+            }
+            if(gpaMode != GPAMode.FLAT){
+                reaction.addProperty(rdfModel.createProperty(fbcNamespace(),"association"), convertAssociationTree(association));
             }
+        }
+    }
 
-            for(Reaction sbmlReaction : fbcParser.getParent().getListOfReactions()){
-                FBCReactionPlugin rxnFbcParser = (FBCReactionPlugin) sbmlReaction.getPlugin("fbc");
-                if(rxnFbcParser.isSetGeneProductAssociation()){
-                    Association association = rxnFbcParser.getGeneProductAssociation().getAssociation();
-                    Set<GeneProductRef> associatedGenes = parseGPA(association);
-
-                    for(GeneProductRef sbmlGeneRef : associatedGenes){
-                        Resource gene = rdfModel.createResource(modelNamespace + sbmlGeneRef.getGeneProductInstance().getMetaId());
-                        Resource reaction = rdfModel.createResource(modelNamespace + sbmlReaction.getMetaId());
-                        reaction.addProperty(geneProductAssociation, gene);
-                    }
+    // convert an and/or expression, children first, and return the resource of its root (the gene product resource for a
+    // single gene). Each distinct operator is converted once, with a URI derived from its content.
+    private Resource convertAssociationTree(Association root){
+        //depth-first listing, reversed to visit the children before their parent
+        List<Association> order = new ArrayList<>();
+        Deque<Association> stack = new ArrayDeque<>();
+        stack.push(root);
+        while(!stack.isEmpty()){
+            Association association = stack.pop();
+            order.add(association);
+            if(association instanceof LogicalOperator){
+                for(Association child : ((LogicalOperator) association).getListOfAssociations()) stack.push(child);
+            }
+        }
+        Map<Association, String> keys = new IdentityHashMap<>();
+        Map<Association, Resource> nodes = new IdentityHashMap<>();
+        Property associationProperty = rdfModel.createProperty(fbcNamespace(),"association");
+        for(int i = order.size() - 1; i >= 0; i--){
+            Association association = order.get(i);
+            if(association instanceof GeneProductRef){
+                GeneProductRef ref = (GeneProductRef) association;
+                keys.put(association, gpaGeneKey(ref.getGeneProduct()));
+                nodes.put(association, getResource(ref.getGeneProductInstance().getMetaId()));
+            }else if(association instanceof LogicalOperator){
+                List<Association> children = ((LogicalOperator) association).getListOfAssociations();
+                List<String> childKeys = new ArrayList<>(children.size());
+                for(Association child : children) childKeys.add(keys.get(child));
+                String key = gpaOperatorKey(association instanceof And, childKeys);
+                Resource operator = gpaResources.get(key);
+                if(operator == null){
+                    operator = rdfModel.createResource(gpaNodeURI(modelNamespace, key));
+                    operator.addProperty(RDF.type, rdfModel.createResource(fbcNamespace() + (association instanceof And ? "and" : "or")));
+                    for(Association child : children) operator.addProperty(associationProperty, nodes.get(child));
+                    gpaResources.put(key, operator);
                 }
+                keys.put(association, key);
+                nodes.put(association, operator);
+            }
+        }
+        return nodes.get(root);
+    }
 
+    // the canonical form of a gene product in an association expression
+    static String gpaGeneKey(String geneProductId){
+        return geneProductId;
+    }
 
-            }
+    // the canonical form of an and/or expression, from the canonical forms of its operands (in any order)
+    static String gpaOperatorKey(boolean and, List<String> childKeys){
+        List<String> sorted = new ArrayList<>(childKeys);
+        Collections.sort(sorted);
+        return (and ? "and(" : "or(") + String.join(",", sorted) + ")";
+    }
 
-        }
+    // the skolem URI of a speciesRef without metaId, from its reaction URI, its role (reactant, product or modifier) and
+    // its position in the reaction list of this role. Metaids can't contain '/', so these URIs can't clash with elements
+    static String speciesRefURI(String reactionURI, String role, int index){
+        return reactionURI + "/" + role + "/" + index;
+    }
 
+    // the URI of an and/or expression, derived from its canonical form
+    static String gpaNodeURI(String modelNamespace, String key){
+        return modelNamespace + "gpa_" + UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
     }
 
-    //parse the fbc gene product associations
-    private Set<GeneProductRef> parseGPA(Association association){
-        Set<GeneProductRef> associatedGenes = new HashSet<>();
-        if(association.getClass().getCanonicalName().equals(And.class.getCanonicalName())
-        || (association.getClass().getCanonicalName().equals(Or.class.getCanonicalName()))){
-            LogicalOperator operator = (LogicalOperator) association;
-            for(Association nestedAssoc : operator.getListOfAssociations()){
-                associatedGenes.addAll(parseGPA(nestedAssoc));
-            }
-        }else if(association.getClass().getCanonicalName().equals(GeneProductRef.class.getCanonicalName())){
-            associatedGenes.add((GeneProductRef) association);
-        }else{
+    /**
+     * Convert a single compartment, species, reaction (with its gene associations) or gene product in a separate rdf
+     * model, sharing the namespace of this convertor. The model resource is referenced but not described.
+     * @param sbmlElement the sbml element, from the sbml model of this convertor
+     * @return the rdf model with the statements describing the element
+     */
+    org.apache.jena.rdf.model.Model convertElement(SBase sbmlElement){
+        Convertor elementConvertor = new Convertor(this, ModelFactory.createDefaultModel());
+        if(sbmlElement instanceof Compartment){
+            elementConvertor.convertCompartments(List.of((Compartment) sbmlElement));
+        }else if(sbmlElement instanceof Species){
+            elementConvertor.convertSpecies(List.of((Species) sbmlElement));
+        }else if(sbmlElement instanceof Reaction){
+            elementConvertor.convertReactions(List.of((Reaction) sbmlElement));
+        }else if(sbmlElement instanceof GeneProduct){
+            elementConvertor.convertGeneProduct((GeneProduct) sbmlElement);
+        }
+        return elementConvertor.rdfModel;
+    }
 
+    //list the gene products of a fbc gene product association, walking the and/or expression iteratively
+    static Set<GeneProductRef> parseGPA(Association association){
+        Set<GeneProductRef> associatedGenes = new LinkedHashSet<>();
+        Deque<Association> stack = new ArrayDeque<>();
+        stack.push(association);
+        while(!stack.isEmpty()){
+            Association current = stack.pop();
+            if(current instanceof GeneProductRef){
+                associatedGenes.add((GeneProductRef) current);
+            }else if(current instanceof LogicalOperator){
+                List<Association> children = ((LogicalOperator) current).getListOfAssociations();
+                for(int i = children.size() - 1; i >= 0; i--) stack.push(children.get(i));
+            }
         }
         return associatedGenes;
     }
@@ -264,4 +479,55 @@ public class Convertor {
         this.convertGenes();
     }
 
+    /**
+     * Convert the compartments, then the species and the reactions (with their gene associations) using several
+     * threads, and finally the genes.
+     * Species and reactions are split in chunks, each converted in its own rdf model, which are then added to the
+     * rdf model in the sbml order. The resulting statements are the same as the ones from {@link #run()}.
+     * @param threads the number of threads to use
+     * @throws InterruptedException if interrupted while waiting for the chunks conversion
+     */
+    public void runParallel(int threads) throws InterruptedException {
+        this.convertCompartments();
+        if(sbmlModel.isPackageEnabled("fbc")) fbcNamespace(); //shared by the reactions chunks
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<org.apache.jena.rdf.model.Model>> chunks = new ArrayList<>();
+            for(List<Species> speciesChunk : partition(speciesToConvert(), threads * 4)){
+                chunks.add(pool.submit(() -> {
+                    Convertor chunkConvertor = new Convertor(this, ModelFactory.createDefaultModel());
+                    chunkConvertor.convertSpecies(speciesChunk);
+                    return chunkConvertor.rdfModel;
+                }));
+            }
+            for(List<Reaction> reactionChunk : partition(reactionsToConvert(), threads * 4)){
+                chunks.add(pool.submit(() -> {
+                    Convertor chunkConvertor = new Convertor(this, ModelFactory.createDefaultModel());
+                    chunkConvertor.convertReactions(reactionChunk);
+                    return chunkConvertor.rdfModel;
+                }));
+            }
+            //merge in submission order for a deterministic output
+            for(Future<org.apache.jena.rdf.model.Model> chunk : chunks){
+                rdfModel.add(chunk.get());
+            }
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        this.convertGenes();
+    }
+
+    // split a list in at most n contiguous chunks of similar size
+    private static <T> List<List<T>> partition(List<T> list, int n){
+        List<List<T>> chunks = new ArrayList<>();
+        int size = Math.max(1, (list.size() + n - 1) / n);
+        for(int i = 0; i < list.size(); i += size){
+            chunks.add(list.subList(i, Math.min(list.size(), i + size)));
+        }
+        return chunks;
+    }
+
 }
@@ -0,0 +1,160 @@
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.Txn;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A {@link StreamRDF} that adds the received statements to a named graph of a transactional dataset (such as a TDB2
+ * store), committing a write transaction every given number of statements. This keeps the transactions bounded when
+ * loading models larger than the heap. The statements are loaded into a staging graph, which replaces the named graph
+ * when the stream is finished, in a single write transaction: a model converted again replaces its previous version,
+ * which is kept if the conversion fails ({@link #abort()} then discards the staging graph).
+ * The stream must be used by a single thread, as transactions are bound to the thread that starts them.
+ */
+public class DatasetLoader implements StreamRDF {
+
+    public static final int DEFAULT_BATCH_SIZE = 100_000;
+    /** The prefix of the staging graph names, followed by the URI of the loaded graph */
+    public static final String STAGING_PREFIX = "urn:sbml2rdf:staging:";
+
+    private final Dataset dataset;
+    private final Node graphName;
+    private final Node stagingName;
+    private final int batchSize;
+    private int pending = 0;
+    private long loaded = 0;
+
+    /**
+     * @param dataset the transactional dataset
+     * @param graphURI the URI of the named graph receiving the statements
+     * @param batchSize the number of statements added per write transaction
+     */
+    public DatasetLoader(Dataset dataset, String graphURI, int batchSize) {
+        this.dataset = dataset;
+        this.graphName = NodeFactory.createURI(graphURI);
+        this.stagingName = NodeFactory.createURI(STAGING_PREFIX + graphURI);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param dataset the transactional dataset
+     * @param graphURI the URI of the named graph receiving the statements
+     */
+    public DatasetLoader(Dataset dataset, String graphURI) {
+        this(dataset, graphURI, DEFAULT_BATCH_SIZE);
+    }
+
+    // start a write transaction if none is running
+    private void begin() {
+        if (!dataset.isInTransaction()) dataset.begin(TxnType.WRITE);
+    }
+
+    // commit the running transaction, if any
+    private void commit() {
+        if (dataset.isInTransaction()) {
+            dataset.commit();
+            dataset.end();
+        }
+        pending = 0;
+    }
+
+    /**
+     * Commit the statements received so far to the staging graph, which can then be read in another transaction
+     */
+    public void flush() {
+        commit();
+    }
+
+    /**
+     * Discard the received statements, the named graph keeping its previous content
+     */
+    public void abort() {
+        if (dataset.isInTransaction()) {
+            dataset.abort();
+            dataset.end();
+        }
+        pending = 0;
+        Txn.executeWrite(dataset, () -> dataset.asDatasetGraph().deleteAny(stagingName, Node.ANY, Node.ANY, Node.ANY));
+    }
+
+    /**
+     * @return the number of statements received so far
+     */
+    public long getLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return the URI of the graph receiving the statements until the stream is finished
+     */
+    public String getStagingGraphURI() {
+        return stagingName.getURI();
+    }
+
+    @Override
+    public void start() {
+        //remove the statements left by an interrupted conversion, committed with the first batch
+        begin();
+        dataset.asDatasetGraph().deleteAny(stagingName, Node.ANY, Node.ANY, Node.ANY);
+    }
+
+    @Override
+    public void triple(Triple triple) {
+        begin();
+        dataset.asDatasetGraph().add(stagingName, triple.getSubject(), triple.getPredicate(), triple.getObject());
+        loaded++;
+        if (++pending >= batchSize) commit();
+    }
+
+    @Override
+    public void quad(Quad quad) {
+        triple(quad.asTriple());
+    }
+
+    @Override
+    public void base(String base) {
+    }
+
+    @Override
+    public void prefix(String prefix, String iri) {
+        begin();
+        dataset.asDatasetGraph().prefixes().add(prefix, iri);
+    }
+
+    @Override
+    public void finish() {
+        commit();
+        Txn.executeWrite(dataset, this::replace);
+    }
+
+    // replace the named graph with the staging graph, moving the statements by batches so that only one batch is held
+    // in memory: the staging statements are deleted once copied, each find starting again from the remaining ones
+    private void replace() {
+        DatasetGraph dsg = dataset.asDatasetGraph();
+        dsg.deleteAny(graphName, Node.ANY, Node.ANY, Node.ANY);
+        List<Quad> batch = new ArrayList<>();
+        do {
+            batch.clear();
+            Iterator<Quad> it = dsg.find(stagingName, Node.ANY, Node.ANY, Node.ANY);
+            try {
+                while (it.hasNext() && batch.size() < batchSize) batch.add(it.next());
+            } finally {
+                Iter.close(it);
+            }
+            for (Quad quad : batch) {
+                dsg.delete(quad);
+                dsg.add(graphName, quad.getSubject(), quad.getPredicate(), quad.getObject());
+            }
+        } while (!batch.isEmpty());
+    }
+}
@@ -0,0 +1,205 @@
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.compose.MultiUnion;
+import org.apache.jena.graph.compose.Union;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.sparql.graph.GraphFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * The Class EnhancementScheduler runs the enhancement stages of a converted model (see {@link PropertyFiller}), each
+ * stage being started as soon as the stages it depends on are done, so that independent stages run concurrently.
+ * A stage doesn't modify the model while the others read it: it reads a snapshot made of the converted statements and
+ * of the statements added by the stages it depends on, and writes its own statements in a separate graph. These graphs
+ * are merged into the model once all the stages are done, in the order the stages were added.
+ * With a single thread, the stages are run one after the other directly on the model. A model stored in a transactional
+ * dataset is only read, the stages adding their statements to a separate graph (see {@link #run(Graph, Graph)}).
+ */
+public class EnhancementScheduler {
+
+    /**
+     * A model enhancement, adding statements to the given model
+     */
+    public interface Enhancement {
+        void apply(org.apache.jena.rdf.model.Model rdf);
+    }
+
+    private static class Stage {
+        final String name;
+        final String message;
+        final Enhancement enhancement;
+        //the stages this one depends on, directly or not
+        final Set<Stage> dependencies = new LinkedHashSet<>();
+        final Graph added = GraphFactory.createGraphMem();
+        final Map<String, String> prefixes = new HashMap<>();
+
+        Stage(String name, String message, Enhancement enhancement) {
+            this.name = name;
+            this.message = message;
+            this.enhancement = enhancement;
+        }
+    }
+
+    private final List<Stage> stages = new ArrayList<>();
+    private final Map<String, Stage> stagesByName = new HashMap<>();
+    private final ConversionMetrics metrics;
+    private final Consumer<String> log;
+
+    /**
+     * @param metrics the metrics recorder, each stage being measured under its name
+     * @param log where to print the stages messages and the number of statements they add
+     */
+    public EnhancementScheduler(ConversionMetrics metrics, Consumer<String> log) {
+        this.metrics = metrics;
+        this.log = log;
+    }
+
+    /**
+     * Add a stage, run after the stages it depends on
+     * @param name the name of the stage, used in the metrics report
+     * @param message the message printed when the stage starts
+     * @param enhancement the enhancement to run
+     * @param dependencies the names of the previously added stages whose statements are read by this stage
+     * @return this scheduler
+     */
+    public EnhancementScheduler add(String name, String message, Enhancement enhancement, String... dependencies) {
+        Stage stage = new Stage(name, message, enhancement);
+        for (String dependency : dependencies) {
+            Stage required = stagesByName.get(dependency);
+            if (required == null) throw new IllegalArgumentException("unknown enhancement stage " + dependency);
+            stage.dependencies.addAll(required.dependencies);
+            stage.dependencies.add(required);
+        }
+        stages.add(stage);
+        stagesByName.put(name, stage);
+        return this;
+    }
+
+    /**
+     * @return true if no stage was added
+     */
+    public boolean isEmpty() {
+        return stages.isEmpty();
+    }
+
+    /**
+     * Run the stages one after the other, directly on the model
+     * @param rdf the converted model
+     */
+    public void run(org.apache.jena.rdf.model.Model rdf) {
+        for (Stage stage : stages) {
+            log.accept(stage.message);
+            ConversionMetrics.Stage measure = metrics.stage(stage.name, rdf::size);
+            try {
+                stage.enhancement.apply(rdf);
+            } finally {
+                measure.close();
+            }
+            log.accept(metrics.getTriplesAdded(stage.name) + " triples added");
+        }
+    }
+
+    /**
+     * Run the stages one after the other on a graph that is only read, such as a graph of a dataset in a read
+     * transaction, the statements they add going to another graph
+     * @param converted the converted graph, which isn't modified
+     * @param added the graph receiving the statements added by the stages
+     * @return the prefixes set by the stages
+     */
+    public PrefixMapping run(Graph converted, Graph added) {
+        //the added graph only holds new statements, so the size of the view is the sum of the sizes
+        org.apache.jena.rdf.model.Model view = ModelFactory.createModelForGraph(new Union(added, converted) {
+            @Override
+            public void performAdd(Triple t) {
+                if (!converted.contains(t)) super.performAdd(t);
+            }
+
+            @Override
+            protected int graphBaseSize() {
+                return converted.size() + added.size();
+            }
+        });
+        run(view);
+        return view;
+    }
+
+    /**
+     * Run the stages on several threads, each one on its snapshot of the model, then add their statements to the model
+     * @param rdf the converted model, which must not be modified until the stages are done
+     * @param threads the maximum number of stages run concurrently, the stages being run directly on the model if 1
+     * @throws InterruptedException if interrupted while waiting for the stages
+     */
+    public void run(org.apache.jena.rdf.model.Model rdf, int threads) throws InterruptedException {
+        if (threads <= 1 || stages.size() <= 1) {
+            run(rdf);
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, stages.size()));
+        try {
+            Map<Stage, CompletableFuture<Void>> runs = new HashMap<>();
+            for (Stage stage : stages) {
+                CompletableFuture<?>[] dependencies = stage.dependencies.stream().map(runs::get).toArray(CompletableFuture[]::new);
+                runs.put(stage, CompletableFuture.allOf(dependencies).thenRunAsync(() -> runIsolated(stage, rdf.getGraph()), executor));
+            }
+            CompletableFuture.allOf(runs.values().toArray(new CompletableFuture<?>[0])).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //merge the statements of each stage
+        ConversionMetrics.Stage measure = metrics.stage("mergeEnhancements", rdf::size);
+        try {
+            for (Stage stage : stages) {
+                GraphUtil.addInto(rdf.getGraph(), stage.added);
+                rdf.setNsPrefixes(stage.prefixes);
+            }
+        } finally {
+            measure.close();
+        }
+    }
+
+    // run a stage on a read-only view of the converted graph and of the graphs of its dependencies, the statements it
+    // adds going to its own graph
+    private void runIsolated(Stage stage, Graph converted) {
+        Graph snapshot = snapshot(stage, converted);
+        //Union adds every statement to its left graph: skip those already in the snapshot, so that the stage graph (and
+        //its measure) only holds new statements
+        org.apache.jena.rdf.model.Model view = ModelFactory.createModelForGraph(new Union(stage.added, snapshot) {
+            @Override
+            public void performAdd(Triple t) {
+                if (!snapshot.contains(t)) super.performAdd(t);
+            }
+        });
+        log.accept(stage.message);
+        ConversionMetrics.Stage measure = metrics.stage(stage.name, stage.added::size);
+        try {
+            stage.enhancement.apply(view);
+        } finally {
+            measure.close();
+        }
+        stage.prefixes.putAll(view.getNsPrefixMap());
+        log.accept(stage.name + ": " + metrics.getTriplesAdded(stage.name) + " triples added");
+    }
+
+    // the converted graph and the statements added by the stages a stage depends on
+    private static Graph snapshot(Stage stage, Graph converted) {
+        if (stage.dependencies.isEmpty()) return converted;
+        MultiUnion union = new MultiUnion(new Graph[]{converted});
+        for (Stage dependency : stage.dependencies) union.addGraph(dependency.added);
+        return union;
+    }
+}
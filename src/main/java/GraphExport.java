@@ -0,0 +1,297 @@
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A compact binary export of the reaction network of a converted model, for graph algorithms that don't need RDF.
+ * Species and reactions are identified by dense integers (see {@link ReactionIndex}), and both graphs are stored in
+ * compressed sparse rows:
+ * the species/reaction bipartite graph (the participants of each reaction, with their role and stoichiometry), and the
+ * compound graph (the same links as the "derives into" enhancement, with the reaction creating each link).
+ * A dictionary gives the URI of each species and reaction.
+ *
+ * The file is a sequence of big-endian values, readable with a memory-mapped buffer:
+ * the magic "SBMLCSR1", the counts of species, reactions, participants and compound links (4 int),
+ * the participants offsets (reactions+1 int), species (participants int), roles (participants byte), stoichiometry
+ * (participants double, NaN if unknown), the reversibility of each reaction (reactions byte), the compound links offsets
+ * (species+1 int), targets (links int) and reactions (links int), then the species URIs and the reaction URIs (each as
+ * an int length followed by UTF-8 bytes).
+ */
+public class GraphExport {
+
+    private static final byte[] MAGIC = "SBMLCSR1".getBytes(StandardCharsets.US_ASCII);
+
+    /** role of a participant: reactant */
+    public static final byte REACTANT = 0;
+    /** role of a participant: product */
+    public static final byte PRODUCT = 1;
+    /** role of a participant: reactant typed as side compound */
+    public static final byte SIDE_REACTANT = 2;
+    /** role of a participant: product typed as side compound */
+    public static final byte SIDE_PRODUCT = 3;
+
+    private final String[] species;
+    private final String[] reactions;
+    private final int[] participantOffsets;
+    private final int[] participants;
+    private final byte[] roles;
+    private final double[] stoichiometry;
+    private final boolean[] reversible;
+    private final int[] linkOffsets;
+    private final int[] linkTargets;
+    private final int[] linkReactions;
+
+    private GraphExport(String[] species, String[] reactions, int[] participantOffsets, int[] participants, byte[] roles,
+                        double[] stoichiometry, boolean[] reversible, int[] linkOffsets, int[] linkTargets, int[] linkReactions) {
+        this.species = species;
+        this.reactions = reactions;
+        this.participantOffsets = participantOffsets;
+        this.participants = participants;
+        this.roles = roles;
+        this.stoichiometry = stoichiometry;
+        this.reversible = reversible;
+        this.linkOffsets = linkOffsets;
+        this.linkTargets = linkTargets;
+        this.linkReactions = linkReactions;
+    }
+
+    /**
+     * Build the graphs of a converted model. Side compounds must be imported first to be excluded from the compound
+     * graph.
+     * @param graph the converted model's graph
+     * @return the graphs
+     */
+    public static GraphExport fromGraph(Graph graph) {
+        ReactionIndex index = new ReactionIndex(graph);
+        int speciesCount = index.getSpeciesCount();
+        int reactionCount = index.getReactionCount();
+
+        //bipartite graph, reactants first
+        int[] participantOffsets = new int[reactionCount + 1];
+        for (int r = 0; r < reactionCount; r++) {
+            participantOffsets[r + 1] = participantOffsets[r] + index.getReactants(r).size() + index.getProducts(r).size();
+        }
+        int[] participants = new int[participantOffsets[reactionCount]];
+        byte[] roles = new byte[participants.length];
+        double[] stoichiometry = new double[participants.length];
+        boolean[] reversible = new boolean[reactionCount];
+        for (int r = 0; r < reactionCount; r++) {
+            int p = participantOffsets[r];
+            p = fill(index.getReactants(r), p, participants, roles, stoichiometry, REACTANT, SIDE_REACTANT);
+            fill(index.getProducts(r), p, participants, roles, stoichiometry, PRODUCT, SIDE_PRODUCT);
+            reversible[r] = index.isReversible(r);
+        }
+
+        //compound graph
+        int[] linkOffsets = new int[speciesCount + 1];
+        index.forEachLink((reaction, source, target) -> linkOffsets[source + 1]++);
+        for (int s = 0; s < speciesCount; s++) linkOffsets[s + 1] += linkOffsets[s];
+        int[] linkTargets = new int[linkOffsets[speciesCount]];
+        int[] linkReactions = new int[linkTargets.length];
+        int[] next = Arrays.copyOf(linkOffsets, speciesCount);
+        index.forEachLink((reaction, source, target) -> {
+            linkTargets[next[source]] = target;
+            linkReactions[next[source]++] = reaction;
+        });
+
+        String[] species = new String[speciesCount];
+        for (int s = 0; s < speciesCount; s++) species[s] = name(index.getSpecies(s));
+        String[] reactions = new String[reactionCount];
+        for (int r = 0; r < reactionCount; r++) reactions[r] = name(index.getReaction(r));
+        return new GraphExport(species, reactions, participantOffsets, participants, roles, stoichiometry, reversible,
+                linkOffsets, linkTargets, linkReactions);
+    }
+
+    private static int fill(ReactionIndex.Participants side, int p, int[] participants, byte[] roles, double[] stoichiometry,
+                            byte role, byte sideRole) {
+        for (int i = 0; i < side.size(); i++, p++) {
+            participants[p] = side.species[i];
+            roles[p] = side.side[i] ? sideRole : role;
+            stoichiometry[p] = side.stoichiometry[i];
+        }
+        return p;
+    }
+
+    private static String name(Node node) {
+        return node.isURI() ? node.getURI() : "_:" + node.getBlankNodeLabel();
+    }
+
+    /**
+     * Write the graphs
+     * @param path the output file
+     * @throws IOException if the file can't be written
+     */
+    public void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.write(MAGIC);
+            out.writeInt(species.length);
+            out.writeInt(reactions.length);
+            out.writeInt(participants.length);
+            out.writeInt(linkTargets.length);
+            for (int v : participantOffsets) out.writeInt(v);
+            for (int v : participants) out.writeInt(v);
+            out.write(roles);
+            for (double v : stoichiometry) out.writeDouble(v);
+            for (boolean v : reversible) out.writeByte(v ? 1 : 0);
+            for (int v : linkOffsets) out.writeInt(v);
+            for (int v : linkTargets) out.writeInt(v);
+            for (int v : linkReactions) out.writeInt(v);
+            for (String s : species) writeString(out, s);
+            for (String r : reactions) writeString(out, r);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Load graphs written by {@link #write(Path)}, through a memory-mapped buffer
+     * @param path the exported file
+     * @return the graphs
+     * @throws IOException if the file can't be read, or isn't a graph export
+     */
+    public static GraphExport read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("not a graph export : " + path);
+            int speciesCount = buffer.getInt();
+            int reactionCount = buffer.getInt();
+            int participantCount = buffer.getInt();
+            int linkCount = buffer.getInt();
+            int[] participantOffsets = readInts(buffer, reactionCount + 1);
+            int[] participants = readInts(buffer, participantCount);
+            byte[] roles = new byte[participantCount];
+            buffer.get(roles);
+            double[] stoichiometry = new double[participantCount];
+            buffer.asDoubleBuffer().get(stoichiometry);
+            buffer.position(buffer.position() + participantCount * Double.BYTES);
+            boolean[] reversible = new boolean[reactionCount];
+            for (int r = 0; r < reactionCount; r++) reversible[r] = buffer.get() != 0;
+            int[] linkOffsets = readInts(buffer, speciesCount + 1);
+            int[] linkTargets = readInts(buffer, linkCount);
+            int[] linkReactions = readInts(buffer, linkCount);
+            String[] species = new String[speciesCount];
+            for (int s = 0; s < speciesCount; s++) species[s] = readString(buffer);
+            String[] reactions = new String[reactionCount];
+            for (int r = 0; r < reactionCount; r++) reactions[r] = readString(buffer);
+            return new GraphExport(species, reactions, participantOffsets, participants, roles, stoichiometry, reversible,
+                    linkOffsets, linkTargets, linkReactions);
+        } catch (java.nio.BufferUnderflowException e) {
+            throw new IOException("truncated graph export : " + path, e);
+        }
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of species (species taking part in at least one reaction)
+     */
+    public int getSpeciesCount() {
+        return species.length;
+    }
+
+    /**
+     * @return the number of reactions
+     */
+    public int getReactionCount() {
+        return reactions.length;
+    }
+
+    /**
+     * @param species a species id
+     * @return the URI of the species
+     */
+    public String getSpecies(int species) {
+        return this.species[species];
+    }
+
+    /**
+     * @param reaction a reaction id
+     * @return the URI of the reaction
+     */
+    public String getReaction(int reaction) {
+        return reactions[reaction];
+    }
+
+    /**
+     * @param reaction a reaction id
+     * @return true if the reaction is reversible
+     */
+    public boolean isReversible(int reaction) {
+        return reversible[reaction];
+    }
+
+    /**
+     * @return the participants of reaction r are at the indexes offsets[r] to offsets[r+1]-1 of the participants arrays
+     */
+    public int[] getParticipantOffsets() {
+        return participantOffsets;
+    }
+
+    /**
+     * @return the species id of each participant
+     */
+    public int[] getParticipants() {
+        return participants;
+    }
+
+    /**
+     * @return the role of each participant: {@link #REACTANT}, {@link #PRODUCT}, {@link #SIDE_REACTANT} or {@link #SIDE_PRODUCT}
+     */
+    public byte[] getRoles() {
+        return roles;
+    }
+
+    /**
+     * @return the stoichiometric coefficient of each participant, NaN if unknown
+     */
+    public double[] getStoichiometry() {
+        return stoichiometry;
+    }
+
+    /**
+     * @return the links from species s are at the indexes offsets[s] to offsets[s+1]-1 of the links arrays
+     */
+    public int[] getLinkOffsets() {
+        return linkOffsets;
+    }
+
+    /**
+     * @return the produced species id of each compound link
+     */
+    public int[] getLinkTargets() {
+        return linkTargets;
+    }
+
+    /**
+     * @return the reaction id of each compound link
+     */
+    public int[] getLinkReactions() {
+        return linkReactions;
+    }
+}
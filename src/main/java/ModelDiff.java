@@ -0,0 +1,238 @@
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdfpatch.RDFChanges;
+import org.sbml.jsbml.*;
+import org.sbml.jsbml.ext.fbc.FBCModelPlugin;
+import org.sbml.jsbml.ext.fbc.FBCReactionPlugin;
+import org.sbml.jsbml.ext.fbc.GeneProductRef;
+
+import java.util.*;
+
+/**
+ * The Class ModelDiff computes the changes between the RDF conversions of two versions of a model, and sends them as
+ * an RDF Patch (additions and deletions of statements). Between two SBML files, only the elements whose SBML content
+ * differs (or that refer to an element whose metaId changed) are converted.
+ * Statements with blank nodes (speciesRefs without metaId) can't be identified across conversions, so their deletion
+ * can't be applied to a store: the diff is rejected if they change. Skolemized conversions (see
+ * {@link Convertor#setSkolemize(boolean)}), used both for the stored model and the diff, or metaIds given to the
+ * speciesRefs avoid this.
+ */
+public class ModelDiff {
+
+    private final String modelURI;
+    private long added = 0;
+    private long deleted = 0;
+    private int changedElements = 0;
+    private boolean skolemize = false;
+
+    /**
+     * @param modelURI the URI of the model, the same for both versions
+     */
+    public ModelDiff(String modelURI) {
+        this.modelURI = modelURI;
+    }
+
+    /**
+     * @param skolemize if the speciesRefs without metaId are converted with skolem URIs instead of blank nodes, as the
+     *                  previous version in the store was
+     */
+    public void setSkolemize(boolean skolemize) {
+        this.skolemize = skolemize;
+    }
+
+    /**
+     * Send the changes between the conversions of two versions of a sbml model, as a single transaction.
+     * @param previous the previous version of the sbml model
+     * @param current the new version of the sbml model
+     * @param out the destination of the changes, started by the caller
+     * @throws IllegalArgumentException if statements with blank nodes changed, the transaction being aborted
+     */
+    public void diff(org.sbml.jsbml.Model previous, org.sbml.jsbml.Model current, RDFChanges out) {
+        Convertor previousConvertor = new Convertor(previous, ModelFactory.createDefaultModel(), modelURI);
+        Convertor currentConvertor = new Convertor(current, ModelFactory.createDefaultModel(), modelURI);
+        previousConvertor.setSkolemize(skolemize);
+        currentConvertor.setSkolemize(skolemize);
+        if (!previous.getMetaId().equals(current.getMetaId())) {
+            //all the elements are linked to the model resource, which changed
+            previousConvertor.run();
+            currentConvertor.run();
+            diff(previousConvertor.getRdfModel(), currentConvertor.getRdfModel(), out);
+            return;
+        }
+
+        out.txnBegin();
+        try {
+            diffElements(previous, current, previousConvertor, currentConvertor, out);
+        } catch (RuntimeException e) {
+            out.txnAbort();
+            throw e;
+        }
+        out.txnCommit();
+    }
+
+    // send the changes of the model and of each element, whose statements are converted if its content changed
+    private void diffElements(org.sbml.jsbml.Model previous, org.sbml.jsbml.Model current, Convertor previousConvertor,
+                              Convertor currentConvertor, RDFChanges out) {
+        //statements about the model itself
+        send(previousConvertor.getRdfModel().getGraph(), currentConvertor.getRdfModel().getGraph(), "the model", out);
+
+        //statements about each element
+        Map<String, SBase> previousElements = listElements(previous);
+        Map<String, SBase> currentElements = listElements(current);
+        Set<String> dependents = listDependents(previous, current);
+        Set<String> keys = new LinkedHashSet<>(previousElements.keySet());
+        keys.addAll(currentElements.keySet());
+        for (String key : keys) {
+            SBase previousElement = previousElements.get(key);
+            SBase currentElement = currentElements.get(key);
+            if (previousElement != null && currentElement != null && !dependents.contains(key)
+                    && sameContent(previousElement, currentElement)) continue;
+            changedElements++;
+            Graph before = previousElement == null ? Graph.emptyGraph : previousConvertor.convertElement(previousElement).getGraph();
+            Graph after = currentElement == null ? Graph.emptyGraph : currentConvertor.convertElement(currentElement).getGraph();
+            send(before, after, key, out);
+        }
+    }
+
+    /**
+     * Send the changes between two converted models, as a single transaction.
+     * @param previous the previous rdf model
+     * @param current the new rdf model
+     * @param out the destination of the changes, started by the caller
+     * @throws IllegalArgumentException if statements with blank nodes changed, the transaction being aborted
+     */
+    public void diff(org.apache.jena.rdf.model.Model previous, org.apache.jena.rdf.model.Model current, RDFChanges out) {
+        out.txnBegin();
+        try {
+            send(previous.getGraph(), current.getGraph(), "the model", out);
+        } catch (RuntimeException e) {
+            out.txnAbort();
+            throw e;
+        }
+        out.txnCommit();
+    }
+
+    // send the statements to delete and to add to turn a graph into another. Statements with blank nodes are kept if
+    // both sets of such statements are isomorphic, and rejected otherwise, as their deletion can't match a store.
+    private void send(Graph before, Graph after, String element, RDFChanges out) {
+        Graph beforeBlanks = ModelFactory.createDefaultModel().getGraph();
+        Graph afterBlanks = ModelFactory.createDefaultModel().getGraph();
+        before.find().forEachRemaining(t -> {
+            if (hasBlank(t)) beforeBlanks.add(t);
+        });
+        after.find().forEachRemaining(t -> {
+            if (hasBlank(t)) afterBlanks.add(t);
+        });
+        if (!beforeBlanks.isIsomorphicWith(afterBlanks)) {
+            throw new IllegalArgumentException("the speciesRefs without metaId of " + element + " changed: their blank nodes" +
+                    " can't be deleted from a store. Convert the model and its previous version with skolemized speciesRefs");
+        }
+        before.find().forEachRemaining(t -> {
+            if (!hasBlank(t) && !after.contains(t)) delete(t, out);
+        });
+        after.find().forEachRemaining(t -> {
+            if (!hasBlank(t) && !before.contains(t)) add(t, out);
+        });
+    }
+
+    private static boolean hasBlank(Triple t) {
+        return t.getSubject().isBlank() || t.getObject().isBlank();
+    }
+
+    private void add(Triple t, RDFChanges out) {
+        out.add(null, t.getSubject(), t.getPredicate(), t.getObject());
+        added++;
+    }
+
+    private void delete(Triple t, RDFChanges out) {
+        out.delete(null, t.getSubject(), t.getPredicate(), t.getObject());
+        deleted++;
+    }
+
+    // the converted elements of a sbml model, by kind and identifier
+    private static Map<String, SBase> listElements(org.sbml.jsbml.Model sbmlModel) {
+        Map<String, SBase> elements = new LinkedHashMap<>();
+        sbmlModel.getListOfCompartments().forEach(c -> elements.put("compartment:" + c.getId(), c));
+        sbmlModel.getListOfSpecies().forEach(s -> elements.put("species:" + s.getId(), s));
+        sbmlModel.getListOfReactions().forEach(r -> elements.put("reaction:" + r.getId(), r));
+        if (sbmlModel.isPackageEnabled("fbc")) {
+            FBCModelPlugin fbc = (FBCModelPlugin) sbmlModel.getPlugin("fbc");
+            fbc.getListOfGeneProducts().forEach(g -> elements.put("geneProduct:" + g.getId(), g));
+        }
+        return elements;
+    }
+
+    // the elements whose statements refer to an element whose metaId changed (or which was removed or added), even if
+    // their own sbml content is the same
+    private static Set<String> listDependents(org.sbml.jsbml.Model previous, org.sbml.jsbml.Model current) {
+        Map<String, SBase> previousElements = listElements(previous);
+        Map<String, SBase> currentElements = listElements(current);
+        Set<String> moved = new HashSet<>();
+        for (String key : previousElements.keySet()) {
+            SBase currentElement = currentElements.get(key);
+            if (currentElement == null || !previousElements.get(key).getMetaId().equals(currentElement.getMetaId())) moved.add(key);
+        }
+        for (String key : currentElements.keySet()) {
+            if (!previousElements.containsKey(key)) moved.add(key);
+        }
+
+        Set<String> dependents = new HashSet<>();
+        for (Species s : current.getListOfSpecies()) {
+            if (moved.contains("compartment:" + s.getCompartment())) dependents.add("species:" + s.getId());
+        }
+        boolean fbc = current.isPackageEnabled("fbc");
+        for (Reaction r : current.getListOfReactions()) {
+            List<String> references = new ArrayList<>();
+            r.getListOfReactants().forEach(ref -> references.add("species:" + ref.getSpecies()));
+            r.getListOfProducts().forEach(ref -> references.add("species:" + ref.getSpecies()));
+            if (r.isSetListOfModifiers()) { //getListOfModifiers would create an empty list, changing the reaction equality
+                r.getListOfModifiers().forEach(ref -> references.add("species:" + ref.getSpecies()));
+            }
+            if (fbc && r.isSetPlugin("fbc")) { //getPlugin would create the plugin, changing the reaction equality
+                FBCReactionPlugin rxnFbc = (FBCReactionPlugin) r.getPlugin("fbc");
+                if (rxnFbc.isSetGeneProductAssociation()) {
+                    for (GeneProductRef g : Convertor.parseGPA(rxnFbc.getGeneProductAssociation().getAssociation())) {
+                        references.add("geneProduct:" + g.getGeneProduct());
+                    }
+                }
+            }
+            if (references.stream().anyMatch(moved::contains)) dependents.add("reaction:" + r.getId());
+        }
+        return dependents;
+    }
+
+    // compare the sbml content of an element in two versions of a model, including the fbc gene associations
+    private static boolean sameContent(SBase previous, SBase current) {
+        if (!previous.equals(current)) return false;
+        if (previous instanceof Reaction && previous.isSetPlugin("fbc") != current.isSetPlugin("fbc")) return false;
+        if (previous instanceof Reaction && previous.isSetPlugin("fbc")) {
+            FBCReactionPlugin p = (FBCReactionPlugin) previous.getPlugin("fbc");
+            FBCReactionPlugin c = (FBCReactionPlugin) current.getPlugin("fbc");
+            if (p.isSetGeneProductAssociation() != c.isSetGeneProductAssociation()) return false;
+            if (p.isSetGeneProductAssociation() && !p.getGeneProductAssociation().equals(c.getGeneProductAssociation())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of statements added by the changes
+     */
+    public long getAdded() {
+        return added;
+    }
+
+    /**
+     * @return the number of statements deleted by the changes
+     */
+    public long getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * @return the number of sbml elements converted because they changed, were added or removed
+     */
+    public int getChangedElements() {
+        return changedElements;
+    }
+}
@@ -0,0 +1,357 @@
+import org.sbml.jsbml.*;
+import org.sbml.jsbml.ext.fbc.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * A compact binary snapshot of the content of a sbml model used by the conversion: the compartments, species and
+ * reactions (with their speciesRefs, modifiers, SBO term and fbc gene product association), the fbc gene products, and
+ * the biological qualifier annotations of all these elements. Loading a snapshot rebuilds a JSBML model without parsing
+ * the XML file, and converts into the same statements.
+ *
+ * The snapshot records the SHA-256 hash of the sbml file it was taken from, and is only loaded for the same content.
+ * It is a sequence of big-endian values: the magic "SBMLSNP1", the hash, the sbml level and version, the fbc namespace,
+ * then the model, compartments, species, reactions and gene products. Each string is written once, as -2 followed by
+ * its length and UTF-8 bytes, then referenced by its index in the order of first occurrence (-1 for null).
+ */
+public class ModelSnapshot {
+
+    private static final byte[] MAGIC = "SBMLSNP1".getBytes(StandardCharsets.US_ASCII);
+    private static final int NULL = -1;
+    private static final int NEW = -2;
+    //the nodes of the association trees
+    private static final byte GENE = 0;
+    private static final byte AND = 1;
+    private static final byte OR = 2;
+
+    private ModelSnapshot() {
+    }
+
+    /**
+     * Write the snapshot of a model. The file is replaced atomically, snapshots can be written concurrently.
+     * @param sbmlModel the sbml model
+     * @param sourceHash the hash of the sbml file, see {@link ConversionCache#hash(Path)}
+     * @param path the snapshot file
+     * @throws IOException if the file can't be written
+     */
+    public static void write(Model sbmlModel, String sourceHash, Path path) throws IOException {
+        Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                new Writer(out).model(sbmlModel, sourceHash);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Load the model of a snapshot
+     * @param path the snapshot file
+     * @param sourceHash the hash of the sbml file the snapshot should be taken from
+     * @return the sbml model, or null if there is no snapshot or if it was taken from another sbml content
+     * @throws IOException if the file can't be read, or isn't a snapshot
+     */
+    public static Model read(Path path, String sourceHash) throws IOException {
+        if (!Files.isRegularFile(path)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("not a model snapshot : " + path);
+            Reader reader = new Reader(in);
+            if (!sourceHash.equals(reader.string())) return null;
+            return reader.model();
+        } catch (EOFException e) {
+            throw new IOException("truncated model snapshot : " + path, e);
+        }
+    }
+
+    private static class Writer {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void string(String value) throws IOException {
+            if (value == null) {
+                out.writeInt(NULL);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                out.writeInt(index);
+                return;
+            }
+            strings.put(value, strings.size());
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(NEW);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        // the attributes shared by all elements
+        void element(AbstractSBase element) throws IOException {
+            string(element.isSetId() ? element.getId() : null);
+            string(element.isSetMetaId() ? element.getMetaId() : null);
+            annotation(element);
+        }
+
+        void annotation(SBase element) throws IOException {
+            List<CVTerm> terms = new ArrayList<>();
+            if (element.isSetAnnotation()) { //avoid JSBML creating an empty annotation
+                for (CVTerm term : element.getAnnotation().getListOfCVTerms()) {
+                    if (term.isBiologicalQualifier()) terms.add(term);
+                }
+            }
+            out.writeInt(terms.size());
+            for (CVTerm term : terms) {
+                string(term.getQualifier().name());
+                out.writeInt(term.getResourceCount());
+                for (String resource : term.getResources()) string(resource);
+            }
+        }
+
+        void model(Model model, String sourceHash) throws IOException {
+            out.write(MAGIC);
+            string(sourceHash);
+            out.writeInt(model.getLevel());
+            out.writeInt(model.getVersion());
+            boolean fbc = model.isPackageEnabled("fbc");
+            FBCModelPlugin fbcModel = fbc ? (FBCModelPlugin) model.getPlugin("fbc") : null;
+            string(fbc ? fbcModel.getURI() : null);
+            element(model);
+            string(model.getName());
+
+            out.writeInt(model.getCompartmentCount());
+            for (Compartment compartment : model.getListOfCompartments()) {
+                element(compartment);
+                string(compartment.getName());
+            }
+            out.writeInt(model.getSpeciesCount());
+            for (Species species : model.getListOfSpecies()) {
+                element(species);
+                string(species.getName());
+                string(species.getCompartment());
+            }
+            out.writeInt(model.getReactionCount());
+            for (Reaction reaction : model.getListOfReactions()) reaction(reaction);
+            if (fbc) {
+                out.writeInt(fbcModel.getGeneProductCount());
+                for (GeneProduct geneProduct : fbcModel.getListOfGeneProducts()) {
+                    element(geneProduct);
+                    string(geneProduct.getLabel());
+                }
+            }
+        }
+
+        void reaction(Reaction reaction) throws IOException {
+            element(reaction);
+            string(reaction.getName());
+            out.writeBoolean(reaction.getReversible());
+            out.writeInt(reaction.getSBOTerm());
+            string(reaction.isSetCompartment() ? reaction.getCompartment() : null);
+            speciesRefs(reaction.getListOfReactants());
+            speciesRefs(reaction.getListOfProducts());
+            List<ModifierSpeciesReference> modifiers = reaction.isSetListOfModifiers() ? reaction.getListOfModifiers() : List.of();
+            out.writeInt(modifiers.size());
+            for (ModifierSpeciesReference modifier : modifiers) {
+                string(modifier.isSetMetaId() ? modifier.getMetaId() : null);
+                string(modifier.getSpecies());
+            }
+            Association association = null;
+            if (reaction.isSetPlugin("fbc")) { //getPlugin would create an empty plugin
+                FBCReactionPlugin fbc = (FBCReactionPlugin) reaction.getPlugin("fbc");
+                if (fbc.isSetGeneProductAssociation() && fbc.getGeneProductAssociation().isSetAssociation()) {
+                    association = fbc.getGeneProductAssociation().getAssociation();
+                }
+            }
+            out.writeBoolean(association != null);
+            if (association != null) association(association);
+        }
+
+        void speciesRefs(List<SpeciesReference> refs) throws IOException {
+            out.writeInt(refs.size());
+            for (SpeciesReference ref : refs) {
+                string(ref.isSetMetaId() ? ref.getMetaId() : null);
+                string(ref.getSpecies());
+                out.writeDouble(ref.getStoichiometry());
+            }
+        }
+
+        // the and/or expression in depth-first order, each operator followed by its number of operands
+        void association(Association root) throws IOException {
+            Deque<Association> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Association association = stack.pop();
+                if (association instanceof LogicalOperator) {
+                    List<Association> children = ((LogicalOperator) association).getListOfAssociations();
+                    out.writeByte(association instanceof And ? AND : OR);
+                    out.writeInt(children.size());
+                    for (int i = children.size() - 1; i >= 0; i--) stack.push(children.get(i));
+                } else {
+                    out.writeByte(GENE);
+                    string(((GeneProductRef) association).getGeneProduct());
+                }
+            }
+        }
+    }
+
+    private static class Reader {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+        private int level;
+        private int version;
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        String string() throws IOException {
+            int index = in.readInt();
+            if (index == NULL) return null;
+            if (index != NEW) return strings.get(index);
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(value);
+            return value;
+        }
+
+        void element(AbstractSBase element) throws IOException {
+            String id = string();
+            if (id != null) element.setId(id);
+            String metaId = string();
+            if (metaId != null) element.setMetaId(metaId);
+            annotation(element);
+        }
+
+        void annotation(SBase element) throws IOException {
+            int terms = in.readInt();
+            for (int t = 0; t < terms; t++) {
+                CVTerm term = new CVTerm(CVTerm.Type.BIOLOGICAL_QUALIFIER, CVTerm.Qualifier.valueOf(string()));
+                int resources = in.readInt();
+                for (int r = 0; r < resources; r++) term.addResource(string());
+                element.addCVTerm(term);
+            }
+        }
+
+        private static void setName(AbstractNamedSBase element, String name) {
+            if (name != null && !name.isEmpty()) element.setName(name);
+        }
+
+        Model model() throws IOException {
+            level = in.readInt();
+            version = in.readInt();
+            SBMLDocument doc = new SBMLDocument(level, version);
+            String fbcURI = string();
+            Model model = doc.createModel();
+            FBCModelPlugin fbcModel = fbcURI == null ? null : (FBCModelPlugin) model.getPlugin(fbcURI);
+            element(model);
+            setName(model, string());
+
+            int compartments = in.readInt();
+            for (int i = 0; i < compartments; i++) {
+                Compartment compartment = model.createCompartment();
+                element(compartment);
+                setName(compartment, string());
+            }
+            int species = in.readInt();
+            for (int i = 0; i < species; i++) {
+                Species specie = model.createSpecies();
+                element(specie);
+                setName(specie, string());
+                specie.setCompartment(string());
+            }
+            int reactions = in.readInt();
+            for (int i = 0; i < reactions; i++) reaction(model);
+            if (fbcModel != null) {
+                int geneProducts = in.readInt();
+                for (int i = 0; i < geneProducts; i++) {
+                    GeneProduct geneProduct = fbcModel.createGeneProduct();
+                    element(geneProduct);
+                    String label = string();
+                    if (label != null && !label.isEmpty()) geneProduct.setLabel(label);
+                }
+            }
+            return model;
+        }
+
+        void reaction(Model model) throws IOException {
+            Reaction reaction = model.createReaction();
+            element(reaction);
+            setName(reaction, string());
+            reaction.setReversible(in.readBoolean());
+            int sbo = in.readInt();
+            if (sbo >= 0) reaction.setSBOTerm(sbo);
+            String compartment = string();
+            if (compartment != null) reaction.setCompartment(compartment);
+            int reactants = in.readInt();
+            for (int i = 0; i < reactants; i++) reaction.addReactant(speciesRef());
+            int products = in.readInt();
+            for (int i = 0; i < products; i++) reaction.addProduct(speciesRef());
+            int modifiers = in.readInt();
+            for (int i = 0; i < modifiers; i++) {
+                ModifierSpeciesReference modifier = new ModifierSpeciesReference(level, version);
+                String metaId = string();
+                modifier.setSpecies(string());
+                reaction.addModifier(modifier);
+                if (metaId != null) modifier.setMetaId(metaId);
+            }
+            if (in.readBoolean()) {
+                FBCReactionPlugin fbc = (FBCReactionPlugin) reaction.getPlugin("fbc");
+                fbc.createGeneProductAssociation().setAssociation(association());
+            }
+        }
+
+        SpeciesReference speciesRef() throws IOException {
+            SpeciesReference ref = new SpeciesReference(level, version);
+            String metaId = string();
+            ref.setSpecies(string());
+            double stoichiometry = in.readDouble();
+            if (!Double.isNaN(stoichiometry)) ref.setStoichiometry(stoichiometry);
+            if (metaId != null) ref.setMetaId(metaId);
+            return ref;
+        }
+
+        // rebuild an and/or expression written in depth-first order
+        Association association() throws IOException {
+            Association root = null;
+            Deque<LogicalOperator> parents = new ArrayDeque<>();
+            Deque<Integer> remaining = new ArrayDeque<>();
+            do {
+                Association association;
+                byte type = in.readByte();
+                if (type == GENE) {
+                    GeneProductRef ref = new GeneProductRef(level, version);
+                    ref.setGeneProduct(string());
+                    association = ref;
+                } else {
+                    association = type == AND ? new And(level, version) : new Or(level, version);
+                }
+                if (root == null) root = association;
+                else {
+                    parents.peek().addAssociation(association);
+                    remaining.push(remaining.pop() - 1);
+                }
+                if (association instanceof LogicalOperator) {
+                    parents.push((LogicalOperator) association);
+                    remaining.push(in.readInt());
+                }
+                while (!remaining.isEmpty() && remaining.peek() == 0) {
+                    parents.pop();
+                    remaining.pop();
+                }
+            } while (!parents.isEmpty());
+            return root;
+        }
+    }
+}
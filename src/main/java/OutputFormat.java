@@ -0,0 +1,97 @@
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The RDF syntaxes available for the output files. Binary RDF (Thrift, Protobuf) and N-Triples are much faster to write
+ * and to load than pretty-printed turtle. Output files whose name ends with .gz are compressed with gzip.
+ */
+public enum OutputFormat {
+
+    /** pretty-printed turtle (turtle blocks when written as a stream) */
+    TURTLE(RDFFormat.TURTLE, RDFFormat.TURTLE_BLOCKS, "ttl"),
+    /** turtle, grouping the statements by subject without sorting */
+    TURTLE_BLOCKS(RDFFormat.TURTLE_BLOCKS, RDFFormat.TURTLE_BLOCKS, "ttl"),
+    NTRIPLES(RDFFormat.NTRIPLES, RDFFormat.NTRIPLES, "nt"),
+    NQUADS(RDFFormat.NQUADS, RDFFormat.NQUADS, "nq"),
+    /** binary RDF using Apache Thrift */
+    THRIFT(RDFFormat.RDF_THRIFT, RDFFormat.RDF_THRIFT, "trdf"),
+    /** binary RDF using Protocol Buffers */
+    PROTOBUF(RDFFormat.RDF_PROTO, RDFFormat.RDF_PROTO, "rpb");
+
+    private final RDFFormat format;
+    private final RDFFormat streamFormat;
+    private final String extension;
+
+    OutputFormat(RDFFormat format, RDFFormat streamFormat, String extension) {
+        this.format = format;
+        this.streamFormat = streamFormat;
+        this.extension = extension;
+    }
+
+    /**
+     * @return the usual file extension of the syntax, without the leading dot
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Guess the syntax from the extension of a file name (ignoring a trailing .gz). Unknown extensions use turtle.
+     * @param path the output file
+     * @return the syntax
+     */
+    public static OutputFormat fromPath(String path) {
+        String name = isCompressed(path) ? path.substring(0, path.length() - 3) : path;
+        for (OutputFormat f : values()) {
+            if (f != TURTLE_BLOCKS && name.endsWith("." + f.extension)) return f;
+        }
+        return TURTLE;
+    }
+
+    /**
+     * @param path the output file
+     * @return true if the file should be compressed with gzip
+     */
+    public static boolean isCompressed(String path) {
+        return path.endsWith(".gz");
+    }
+
+    /**
+     * Open an output file, compressed with gzip if its name ends with .gz
+     * @param path the output file
+     * @return the buffered output stream
+     * @throws IOException if the file can't be created
+     */
+    public static OutputStream open(String path) throws IOException {
+        OutputStream out = new FileOutputStream(path);
+        if (isCompressed(path)) out = new GZIPOutputStream(out, 1 << 16);
+        return new BufferedOutputStream(out, 1 << 16);
+    }
+
+    /**
+     * Write a whole model
+     * @param out the destination
+     * @param rdf the model
+     */
+    public void write(OutputStream out, org.apache.jena.rdf.model.Model rdf) {
+        RDFDataMgr.write(out, rdf, format);
+    }
+
+    /**
+     * Create a writer for the statements sent as they are created. The caller is responsible for starting and
+     * finishing the stream.
+     * @param out the destination
+     * @return the stream writer
+     */
+    public StreamRDF stream(OutputStream out) {
+        return StreamRDFWriter.getWriterStream(out, streamFormat);
+    }
+}
@@ -1,6 +1,10 @@
 import org.apache.jena.arq.querybuilder.ConstructBuilder;
 import org.apache.jena.arq.querybuilder.SelectBuilder;
 import org.apache.jena.arq.querybuilder.WhereBuilder;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.QueryExecution;
 import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.rdf.model.*;
@@ -16,7 +20,8 @@ import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import vocabulary.SBMLRDF;
 
-import java.util.Collection;
+import java.util.*;
+import java.util.function.Consumer;
 
 /**
  *  This class constructs statements beyond what is typically explicitly reported in SBML files, which still may be proven
@@ -24,6 +29,12 @@ import java.util.Collection;
  */
 public class PropertyFiller {
 
+    /**
+     * The implementation used to build the extra statements: SPARQL CONSTRUCT queries, or native joins over in-memory
+     * indexes of the model
+     */
+    public enum Engine { SPARQL, INDEXED }
+
     /**
      * Add statements about the relatedness of two SBML entries that describe the same compound in different compartments.
      * The link construction assume that each located version of a given compound share the same name.
@@ -57,6 +68,55 @@ public class PropertyFiller {
 
     }
 
+    /**
+     * Same as {@link #harmonizeCompartments(org.apache.jena.rdf.model.Model, boolean)}, grouping the species by name in
+     * a single scan of the model instead of a SPARQL self-join. Each group of species sharing a name is then linked
+     * pairwise.
+     * @param rdfModel the model
+     * @param useSameAs if the relatedness should use the owl:sameAs property
+     * @param normalizeNames if names should be compared ignoring case and leading/trailing white spaces
+     */
+    public static void harmonizeCompartmentsIndexed(org.apache.jena.rdf.model.Model rdfModel, boolean useSameAs, boolean normalizeNames){
+        //select property to use
+        if (!useSameAs) rdfModel.setNsPrefix(SBMLRDF.SIOPREFIX,SBMLRDF.SIOURI);
+        Node link = (useSameAs ? OWL.sameAs : SBMLRDF.IS_VARIANT_OF).asNode();
+
+        //group species by name
+        Graph graph = rdfModel.getGraph();
+        Node nameProperty = SBMLRDF.NAME.asNode();
+        Map<Object, List<Node>> speciesByName = new LinkedHashMap<>();
+        graph.find(Node.ANY, RDF.type.asNode(), SBMLRDF.SPECIE.asNode()).mapWith(Triple::getSubject).toList()
+                .forEach(specie -> graph.find(specie, nameProperty, Node.ANY).forEachRemaining(t -> {
+                    Node name = t.getObject();
+                    Object key = normalizeNames && name.isLiteral() ? name.getLiteralLexicalForm().trim().toLowerCase(Locale.ROOT) : name;
+                    speciesByName.computeIfAbsent(key, k -> new ArrayList<>()).add(specie);
+                }));
+
+        //link species of the same group
+        List<Triple> links = new ArrayList<>();
+        for(List<Node> group : speciesByName.values()){
+            for(Node compound1 : group){
+                for(Node compound2 : group){
+                    if(!compound1.equals(compound2)) links.add(Triple.create(compound1, link, compound2));
+                }
+            }
+        }
+        links.forEach(graph::add);
+    }
+
+    /**
+     * Add statements about the relatedness of two SBML entries that describe the same compound in different
+     * compartments, using the selected engine. Name normalization requires the indexed engine.
+     * @param rdfModel the model
+     * @param useSameAs if the relatedness should use the owl:sameAs property
+     * @param engine the implementation to use
+     * @param normalizeNames if names should be compared ignoring case and leading/trailing white spaces
+     */
+    public static void harmonizeCompartments(org.apache.jena.rdf.model.Model rdfModel, boolean useSameAs, Engine engine, boolean normalizeNames){
+        if(engine == Engine.INDEXED || normalizeNames) harmonizeCompartmentsIndexed(rdfModel, useSameAs, normalizeNames);
+        else harmonizeCompartments(rdfModel, useSameAs);
+    }
+
     /**
      * Add statements about compound-to-compound metabolic relatedness. Two compounds are related if one is consumed by
      * a reaction that produce the other. This is equivalent to building a compound graph, and conveniently bypass the
@@ -117,6 +177,119 @@ public class PropertyFiller {
         qexec.close();
     }
 
+    /**
+     * Same as {@link #addMetaboLinks(org.apache.jena.rdf.model.Model, Boolean)}, using a hash join on an index of the
+     * reactions participants instead of a SPARQL query: the model is scanned once to build a {@link ReactionIndex},
+     * then each reaction links its non-side reactants to its non-side products (and conversely if reversible).
+     * @param rdfModel the model
+     * @param useTransitive if a transitive property should be use (prior flagging of side compounds is recommended)
+     */
+    public static void addMetaboLinksIndexed(org.apache.jena.rdf.model.Model rdfModel, Boolean useTransitive){
+        //select property to use
+        rdfModel.setNsPrefix(SBMLRDF.SIOPREFIX,SBMLRDF.SIOURI);
+        Node metabolink = (useTransitive ? SBMLRDF.DERIVES_INTO : SBMLRDF.IMMEDIATELY_DERIVES_INTO).asNode();
+
+        Graph graph = rdfModel.getGraph();
+        ReactionIndex index = new ReactionIndex(graph);
+
+        //collect new statements before adding them, the graph can't be modified while the index is built
+        List<Triple> links = new ArrayList<>();
+        for(int r = 0; r < index.getReactionCount(); r++){
+            ReactionIndex.Participants reactants = index.getReactants(r);
+            ReactionIndex.Participants products = index.getProducts(r);
+            boolean reversible = index.isReversible(r);
+            for(int i = 0; i < reactants.size(); i++){
+                if(reactants.side[i]) continue; //ignore side reactants
+                Node reactant = index.getSpecies(reactants.species[i]);
+                for(int j = 0; j < products.size(); j++){
+                    if(products.side[j]) continue; //ignore side products
+                    Node product = index.getSpecies(products.species[j]);
+                    links.add(Triple.create(reactant, metabolink, product));
+                    if(reversible) links.add(Triple.create(product, metabolink, reactant));
+                }
+            }
+        }
+        links.forEach(graph::add);
+    }
+
+    /**
+     * Add statements about compound-to-compound metabolic relatedness, using the selected engine
+     * @param rdfModel the model
+     * @param useTransitive if a transitive property should be use (prior flagging of side compounds is recommended)
+     * @param engine the implementation to use
+     */
+    public static void addMetaboLinks(org.apache.jena.rdf.model.Model rdfModel, Boolean useTransitive, Engine engine){
+        if(engine == Engine.INDEXED) addMetaboLinksIndexed(rdfModel, useTransitive);
+        else addMetaboLinks(rdfModel, useTransitive);
+    }
+
+    /**
+     * Materialize the transitive "derives into" relation up to a given number of reactions: each compound is linked to
+     * all the compounds reachable from it in the compound graph (non-side reactants to non-side products, and
+     * conversely for reversible reactions) in at most maxDepth steps, so consumers don't have to evaluate property paths
+     * at query time. The compound graph is built from a {@link ReactionIndex} as primitive adjacency arrays, and
+     * explored breadth-first from each compound, using a bitset of the compounds already reached.
+     * Links from a compound to itself are not added. Side compounds should be imported first, or the closure will
+     * connect most compounds through currency metabolites.
+     * @param rdfModel the model
+     * @param maxDepth the maximum number of reactions between two linked compounds
+     * @return the number of links found
+     */
+    public static long addDerivesClosure(org.apache.jena.rdf.model.Model rdfModel, int maxDepth){
+        rdfModel.setNsPrefix(SBMLRDF.SIOPREFIX,SBMLRDF.SIOURI);
+        Node derivesInto = SBMLRDF.DERIVES_INTO.asNode();
+        Graph graph = rdfModel.getGraph();
+        ReactionIndex index = new ReactionIndex(graph);
+
+        //the graph isn't read anymore, links can be added directly
+        return closure(index.getSpeciesCount(), index::forEachLink, maxDepth, (source, target) ->
+                graph.add(Triple.create(index.getSpecies(source), derivesInto, index.getSpecies(target))));
+    }
+
+    /**
+     * Receives the pairs of compounds linked by the transitive relation
+     */
+    interface ClosureConsumer {
+        void accept(int source, int target);
+    }
+
+    // build the compound graph from its links, then run a bounded breadth-first search from each compound, the queue
+    // holding one level after the other, sending the reached compounds of each compound in breadth-first order
+    static long closure(int species, Consumer<ReactionIndex.LinkConsumer> compoundLinks, int maxDepth, ClosureConsumer consumer){
+        //compound graph in compressed sparse rows: the successors of s are targets[offsets[s]] to targets[offsets[s+1]-1]
+        int[] offsets = new int[species + 1];
+        compoundLinks.accept((reaction, source, target) -> offsets[source + 1]++);
+        for(int s = 0; s < species; s++) offsets[s + 1] += offsets[s];
+        int[] targets = new int[offsets[species]];
+        int[] fill = Arrays.copyOf(offsets, species);
+        compoundLinks.accept((reaction, source, target) -> targets[fill[source]++] = target);
+
+        long links = 0;
+        BitSet reached = new BitSet(species);
+        int[] queue = new int[species];
+        for(int source = 0; source < species; source++){
+            reached.clear();
+            reached.set(source);
+            queue[0] = source;
+            int head = 0, tail = 1;
+            for(int depth = 0; depth < maxDepth && head < tail; depth++){
+                int levelEnd = tail;
+                for(; head < levelEnd; head++){
+                    int s = queue[head];
+                    for(int i = offsets[s]; i < offsets[s + 1]; i++){
+                        int target = targets[i];
+                        if(reached.get(target)) continue;
+                        reached.set(target);
+                        queue[tail++] = target;
+                    }
+                }
+            }
+            for(int i = 1; i < tail; i++) consumer.accept(source, queue[i]);
+            links += tail - 1;
+        }
+        return links;
+    }
+
     /**
      * From a list of side compounds (also known as, or closely related to : ubiquitous/auxiliary/ancillary compounds or currency metabolites), types speciesRefs as sideReactant or sideProduct.
      * @param rdfModel the model
@@ -163,4 +336,47 @@ public class PropertyFiller {
         qexec.close();
     }
 
+    /**
+     * Same as {@link #importSideCompounds(org.apache.jena.rdf.model.Model, Collection)}, resolving the identifiers
+     * through a hash set while scanning the labels, then typing the speciesRefs of the side compounds in a single pass.
+     * @param rdfModel the model
+     * @param sideCompoundIds a collection of side compounds identifiers, using the same identifier system as the input sbml model
+     */
+    public static void importSideCompoundsIndexed(org.apache.jena.rdf.model.Model rdfModel, Collection<String> sideCompoundIds){
+        Set<String> ids = sideCompoundIds instanceof Set ? (Set<String>) sideCompoundIds : new HashSet<>(sideCompoundIds);
+        Graph graph = rdfModel.getGraph();
+
+        //find metabolites with a side compound identifier
+        Set<Node> sideCompounds = new HashSet<>();
+        graph.find(Node.ANY, RDFS.label.asNode(), Node.ANY).forEachRemaining(t -> {
+            Node label = t.getObject();
+            //only string labels, as the SPARQL filter doesn't match typed or language-tagged literals
+            if(label.isLiteral() && XSDDatatype.XSDstring.equals(label.getLiteralDatatype())
+                    && ids.contains(label.getLiteralLexicalForm())) sideCompounds.add(t.getSubject());
+        });
+        if(sideCompounds.isEmpty()) return;
+
+        //type their specieRefs according to their role in reactions
+        Node type = RDF.type.asNode();
+        List<Triple> tags = new ArrayList<>();
+        graph.find(Node.ANY, SBMLRDF.HAS_SPECIE.asNode(), Node.ANY).forEachRemaining(t -> {
+            if(!sideCompounds.contains(t.getObject())) return;
+            Node participant = t.getSubject();
+            if(graph.contains(Node.ANY, SBMLRDF.REACTANT.asNode(), participant)) tags.add(Triple.create(participant, type, SBMLRDF.SIDEREACTANT.asNode()));
+            if(graph.contains(Node.ANY, SBMLRDF.PRODUCT.asNode(), participant)) tags.add(Triple.create(participant, type, SBMLRDF.SIDEPRODUCT.asNode()));
+        });
+        tags.forEach(graph::add);
+    }
+
+    /**
+     * Type speciesRefs of side compounds as sideReactant or sideProduct, using the selected engine
+     * @param rdfModel the model
+     * @param sideCompoundIds a collection of side compounds identifiers, using the same identifier system as the input sbml model
+     * @param engine the implementation to use
+     */
+    public static void importSideCompounds(org.apache.jena.rdf.model.Model rdfModel, Collection<String> sideCompoundIds, Engine engine){
+        if(engine == Engine.INDEXED) importSideCompoundsIndexed(rdfModel, sideCompoundIds);
+        else importSideCompounds(rdfModel, sideCompoundIds);
+    }
+
 }
@@ -0,0 +1,216 @@
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.vocabulary.RDF;
+import vocabulary.SBMLRDF;
+
+import java.util.*;
+
+/**
+ * An index of the reactions of a converted model, built in a single scan of the reactant and product statements:
+ * each reaction is linked to its participants (the species referenced by its speciesRefs), with their stoichiometry
+ * and side compound typing. Species and reactions are given dense integer identifiers, in order of first encounter.
+ */
+public class ReactionIndex {
+
+    /**
+     * The participants of a reaction on one side (reactants or products)
+     */
+    public static class Participants {
+        /** the indexes of the participating species */
+        public final int[] species;
+        /** the stoichiometric coefficients, NaN if unknown */
+        public final double[] stoichiometry;
+        /** true if the speciesRef is typed as side reactant or side product */
+        public final boolean[] side;
+
+        private Participants(int[] species, double[] stoichiometry, boolean[] side) {
+            this.species = species;
+            this.stoichiometry = stoichiometry;
+            this.side = side;
+        }
+
+        public int size() {
+            return species.length;
+        }
+    }
+
+    /**
+     * Receives the links of the compound graph
+     */
+    public interface LinkConsumer {
+        /**
+         * @param reaction the index of the reaction creating the link
+         * @param source the index of the consumed species
+         * @param target the index of the produced species
+         */
+        void accept(int reaction, int source, int target);
+    }
+
+    private final List<Node> speciesNodes = new ArrayList<>();
+    private final Map<Node, Integer> speciesIndex = new HashMap<>();
+    private final List<Node> reactionNodes = new ArrayList<>();
+    private final List<Participants> reactants = new ArrayList<>();
+    private final List<Participants> products = new ArrayList<>();
+    private final BitSet reversible = new BitSet();
+
+    /**
+     * Index the reactions of a graph
+     * @param graph the converted model's graph
+     */
+    public ReactionIndex(Graph graph) {
+        Map<Node, List<Node>> reactantRefs = listParticipants(graph, SBMLRDF.REACTANT.asNode());
+        Map<Node, List<Node>> productRefs = listParticipants(graph, SBMLRDF.PRODUCT.asNode());
+        Set<Node> reactions = new LinkedHashSet<>(reactantRefs.keySet());
+        reactions.addAll(productRefs.keySet());
+
+        Node reversibleValue = ResourceFactory.createTypedLiteral(true).asNode();
+        for (Node reaction : reactions) {
+            if (graph.contains(reaction, SBMLRDF.REVERSIBLE.asNode(), reversibleValue)) reversible.set(reactionNodes.size());
+            reactionNodes.add(reaction);
+            reactants.add(index(graph, reactantRefs.getOrDefault(reaction, List.of()), SBMLRDF.SIDEREACTANT.asNode()));
+            products.add(index(graph, productRefs.getOrDefault(reaction, List.of()), SBMLRDF.SIDEPRODUCT.asNode()));
+        }
+    }
+
+    // list the speciesRefs of each reaction for a given role, keeping the graph order
+    private static Map<Node, List<Node>> listParticipants(Graph graph, Node role) {
+        Map<Node, List<Node>> participants = new LinkedHashMap<>();
+        ExtendedIterator<Triple> it = graph.find(Node.ANY, role, Node.ANY);
+        try {
+            while (it.hasNext()) {
+                Triple t = it.next();
+                participants.computeIfAbsent(t.getSubject(), k -> new ArrayList<>()).add(t.getObject());
+            }
+        } finally {
+            it.close();
+        }
+        return participants;
+    }
+
+    // resolve the species, stoichiometry and side typing of speciesRefs
+    private Participants index(Graph graph, List<Node> refs, Node sideType) {
+        List<Integer> species = new ArrayList<>();
+        List<Double> stoichiometry = new ArrayList<>();
+        List<Boolean> side = new ArrayList<>();
+        for (Node ref : refs) {
+            boolean isSide = graph.contains(ref, RDF.type.asNode(), sideType);
+            double coef = Double.NaN;
+            ExtendedIterator<Triple> stoich = graph.find(ref, SBMLRDF.STOICHIOMETRY.asNode(), Node.ANY);
+            try {
+                if (stoich.hasNext()) {
+                    Object value = stoich.next().getObject().getLiteralValue();
+                    if (value instanceof Number) coef = ((Number) value).doubleValue();
+                }
+            } finally {
+                stoich.close();
+            }
+            ExtendedIterator<Triple> it = graph.find(ref, SBMLRDF.HAS_SPECIE.asNode(), Node.ANY);
+            try {
+                while (it.hasNext()) {
+                    species.add(speciesId(it.next().getObject()));
+                    stoichiometry.add(coef);
+                    side.add(isSide);
+                }
+            } finally {
+                it.close();
+            }
+        }
+        int[] speciesArray = new int[species.size()];
+        double[] stoichArray = new double[species.size()];
+        boolean[] sideArray = new boolean[species.size()];
+        for (int i = 0; i < speciesArray.length; i++) {
+            speciesArray[i] = species.get(i);
+            stoichArray[i] = stoichiometry.get(i);
+            sideArray[i] = side.get(i);
+        }
+        return new Participants(speciesArray, stoichArray, sideArray);
+    }
+
+    private int speciesId(Node specie) {
+        Integer id = speciesIndex.get(specie);
+        if (id == null) {
+            id = speciesNodes.size();
+            speciesIndex.put(specie, id);
+            speciesNodes.add(specie);
+        }
+        return id;
+    }
+
+    /**
+     * @return the number of indexed species (species taking part in at least one reaction)
+     */
+    public int getSpeciesCount() {
+        return speciesNodes.size();
+    }
+
+    /**
+     * @return the number of indexed reactions
+     */
+    public int getReactionCount() {
+        return reactionNodes.size();
+    }
+
+    /**
+     * @param species a species index
+     * @return the species node
+     */
+    public Node getSpecies(int species) {
+        return speciesNodes.get(species);
+    }
+
+    /**
+     * @param reaction a reaction index
+     * @return the reaction node
+     */
+    public Node getReaction(int reaction) {
+        return reactionNodes.get(reaction);
+    }
+
+    /**
+     * @param reaction a reaction index
+     * @return the reactants of the reaction
+     */
+    public Participants getReactants(int reaction) {
+        return reactants.get(reaction);
+    }
+
+    /**
+     * @param reaction a reaction index
+     * @return the products of the reaction
+     */
+    public Participants getProducts(int reaction) {
+        return products.get(reaction);
+    }
+
+    /**
+     * @param reaction a reaction index
+     * @return true if the reaction is reversible
+     */
+    public boolean isReversible(int reaction) {
+        return reversible.get(reaction);
+    }
+
+    /**
+     * Send each link of the compound graph: from the non-side reactants of each reaction to its non-side products, and
+     * conversely if the reaction is reversible
+     * @param consumer the receiver of the links
+     */
+    public void forEachLink(LinkConsumer consumer) {
+        for (int r = 0; r < reactionNodes.size(); r++) {
+            Participants reactants = this.reactants.get(r);
+            Participants products = this.products.get(r);
+            boolean reversible = this.reversible.get(r);
+            for (int i = 0; i < reactants.size(); i++) {
+                if (reactants.side[i]) continue;
+                for (int j = 0; j < products.size(); j++) {
+                    if (products.side[j]) continue;
+                    consumer.accept(r, reactants.species[i], products.species[j]);
+                    if (reversible) consumer.accept(r, products.species[j], reactants.species[i]);
+                }
+            }
+        }
+    }
+}
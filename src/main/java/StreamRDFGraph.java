@@ -0,0 +1,55 @@
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NullIterator;
+
+/**
+ * A write-only Jena graph that forwards every added statement and namespace prefix to a {@link StreamRDF}, without
+ * keeping them. It allows the {@link Convertor} to write its statements directly into a serializer.
+ * The graph can't be queried: it always appears empty, and its size is the number of statements sent so far.
+ * As the statements are not kept, a statement added several times (e.g. an annotation repeated in the SBML file) is
+ * sent each time: the stream can contain duplicates, which are merged when it is loaded as a RDF graph.
+ * The caller is responsible for starting and finishing the stream.
+ */
+public class StreamRDFGraph extends GraphBase {
+
+    private final StreamRDF out;
+    private int sent = 0;
+
+    /**
+     * @param out the destination of the statements
+     */
+    public StreamRDFGraph(StreamRDF out) {
+        this.out = out;
+    }
+
+    @Override
+    public void performAdd(Triple t) {
+        out.triple(t);
+        sent++;
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple triplePattern) {
+        return NullIterator.instance();
+    }
+
+    @Override
+    protected int graphBaseSize() {
+        return sent;
+    }
+
+    @Override
+    protected PrefixMapping createPrefixMapping() {
+        return new PrefixMappingImpl() {
+            @Override
+            protected void set(String prefix, String uri) {
+                super.set(prefix, uri);
+                out.prefix(prefix, uri);
+            }
+        };
+    }
+}
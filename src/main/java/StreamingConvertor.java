@@ -0,0 +1,774 @@
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import vocabulary.SBMLRDF;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The Class StreamingConvertor reads a SBML file with a StAX pull parser and sends the same statements as the
+ * {@link Convertor} to a Jena {@link StreamRDF}, element by element, without building the JSBML model in memory.
+ * Only the nodes of the compartments, species and gene products are kept, in order to resolve the references made
+ * by the species and the reactions.
+ * @author cfrainay
+ */
+public class StreamingConvertor {
+
+    private static final String BQBIOL_NS = "http://biomodels.net/biology-qualifiers/";
+    //the approximate size of the chunks of a list parsed in parallel, small enough to keep few statements buffered
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    //Namespaces
+    private final String modelNamespace;
+    private final String modelPrefix = "model";
+    private final String biomodelPrefix = "bqbiol";
+
+    // the triple sink
+    private final StreamRDF out;
+
+    //namespaces of the sbml core and the fbc package, as declared in the sbml file
+    private String coreNS;
+    private String fbcNS;
+    private int level = 3;
+
+    //the node representing the sbml model
+    private Node sbmlNode;
+    //nodes of the converted entries, by sbml id, used to resolve references
+    private final Map<String, Node> compartments;
+    private final Map<String, Node> species;
+    private final Map<String, Node> geneProducts;
+    //links toward gene products declared after the reaction
+    private final List<PendingLink> pendingAssociations = new ArrayList<>();
+    //and/or expressions already converted, by canonical form, shared with the chunks converted in parallel
+    private final Set<String> gpaOperators;
+    private Convertor.GPAMode gpaMode = Convertor.GPAMode.FLAT;
+    private boolean skolemize = false;
+
+    //parsing state
+    private Node annotationTarget;
+    private Node currentReaction;
+    private Node currentRole;
+    //positions of the next speciesRef in the current list of reactants or products, and of modifiers
+    private int currentRefIndex, currentModifierIndex;
+    private final Set<String> currentGenes = new LinkedHashSet<>();
+    //operands of the and/or elements being read, and canonical form of the reaction's association
+    private final Deque<List<String>> gpaOperands = new ArrayDeque<>();
+    private String currentAssociation;
+
+    private int compartmentCount = 0;
+    private int speciesCount = 0;
+    private int reactionCount = 0;
+
+    /**
+     * The StreamingConvertor requires a URI (Uniform Resource Identifiers) that uniquely identify the model
+     * and a StreamRDF receiving the statements.
+     * Examples:
+     * https://metexplore.toulouse.inra.fr/metexplore2/?idBioSource=1363
+     * https://www.ebi.ac.uk/biomodels/MODEL1311110001
+     *
+     * @param modelURI the URI of the model
+     * @param out the destination of the statements
+     */
+    public StreamingConvertor(String modelURI, StreamRDF out) {
+        this.modelNamespace = modelURI + "#";
+        this.out = out;
+        this.compartments = new HashMap<>();
+        this.species = new HashMap<>();
+        this.geneProducts = new HashMap<>();
+        this.gpaOperators = ConcurrentHashMap.newKeySet();
+    }
+
+    // Create a StreamingConvertor reading a chunk of a list of the parent's document, sharing the namespaces and the
+    // already read entries of the parent. The species and gene products read are added to new maps, or to the parent's.
+    private StreamingConvertor(StreamingConvertor parent, StreamRDF out, boolean ownEntries) {
+        this.modelNamespace = parent.modelNamespace;
+        this.out = out;
+        this.coreNS = parent.coreNS;
+        this.fbcNS = parent.fbcNS;
+        this.level = parent.level;
+        this.sbmlNode = parent.sbmlNode;
+        this.compartments = parent.compartments;
+        this.species = ownEntries ? new HashMap<>() : parent.species;
+        this.geneProducts = ownEntries ? new HashMap<>() : parent.geneProducts;
+        this.gpaOperators = parent.gpaOperators;
+        this.gpaMode = parent.gpaMode;
+        this.skolemize = parent.skolemize;
+    }
+
+    /**
+     * @param gpaMode how the gene product associations are converted, flat links by default
+     */
+    public void setGpaMode(Convertor.GPAMode gpaMode) {
+        this.gpaMode = gpaMode;
+    }
+
+    /**
+     * @param skolemize if the speciesRefs without metaId should be named with URIs derived from their reaction, role
+     *                  and position instead of blank nodes, the same as {@link Convertor#setSkolemize(boolean)}
+     */
+    public void setSkolemize(boolean skolemize) {
+        this.skolemize = skolemize;
+    }
+
+    /**
+     * Read the sbml content and send the statements to the StreamRDF. The caller is responsible for starting and
+     * finishing the stream.
+     * @param sbml the sbml file content
+     * @throws XMLStreamException if the sbml file can't be parsed
+     */
+    public void run(InputStream sbml) throws XMLStreamException {
+        addPrefixes();
+        parse(sbml);
+        resolvePendingAssociations();
+    }
+
+    private void addPrefixes() {
+        out.prefix(SBMLRDF.getPREFIX(), SBMLRDF.getURI());
+        out.prefix(biomodelPrefix, SBMLRDF.BQURI);
+        out.prefix(modelPrefix, modelNamespace);
+    }
+
+    private void parse(InputStream sbml) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XMLStreamReader reader = factory.createXMLStreamReader(sbml);
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    startElement(reader);
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    endElement(reader);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Read a sbml file on several threads and send the same statements as {@link #run(InputStream)} to the StreamRDF.
+     * The file is memory-mapped, and the content of its listOfSpecies, listOfReactions and fbc listOfGeneProducts
+     * elements is split in byte ranges on element boundaries. The rest of the document (model, compartments...) is
+     * read first, then the species and gene products chunks are parsed and converted in parallel, then the reactions
+     * chunks. Each chunk is parsed as
+     * a small document made of the sbml root element and the chunk, and its statements are sent to the StreamRDF in
+     * the document order.
+     * The file is read sequentially if it is larger than 2 GB, or if the lists can't be located (for instance in a
+     * UTF-16 file). The element boundaries are found by looking for the elements start tags, which are expected not to
+     * appear in comments or CDATA sections, and the namespaces are expected to be declared on the sbml root element.
+     * @param sbml the sbml file
+     * @param threads the number of threads
+     * @throws IOException if the file can't be read
+     * @throws XMLStreamException if the sbml file can't be parsed
+     * @throws InterruptedException if interrupted while waiting for the chunks
+     */
+    public void runParallel(Path sbml, int threads) throws IOException, XMLStreamException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(sbml, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                try (InputStream in = Files.newInputStream(sbml)) {
+                    run(in);
+                }
+                return;
+            }
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Range root = rootElement(file);
+            Range speciesList = root == null ? null : listContent(file, root.end, "listOfSpecies");
+            Range reactionsList = speciesList == null ? null : listContent(file, speciesList.end, "listOfReactions");
+            if (reactionsList == null) {
+                run(new BufferInputStream(file, 0, file.limit()));
+                return;
+            }
+
+            //the fbc gene products are also read in parallel, if any
+            Range geneProductsList = listContent(file, root.end, "listOfGeneProducts");
+            List<Range> lists = new ArrayList<>(List.of(speciesList, reactionsList));
+            if (geneProductsList != null) lists.add(geneProductsList);
+            lists.sort(Comparator.comparingInt(Range::start));
+
+            //the document without the lists contents
+            List<InputStream> skeleton = new ArrayList<>();
+            int position = 0;
+            for (Range list : lists) {
+                skeleton.add(new BufferInputStream(file, position, list.start));
+                position = list.end;
+            }
+            skeleton.add(new BufferInputStream(file, position, file.limit()));
+            addPrefixes();
+            parse(concat(skeleton.toArray(new InputStream[0])));
+
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<StreamingConvertor> entries = new ArrayList<>(convertChunks(pool, threads, file, root, speciesList, "species", true));
+                if (geneProductsList != null) entries.addAll(convertChunks(pool, threads, file, root, geneProductsList, "geneProduct", true));
+                for (StreamingConvertor chunk : entries) {
+                    species.putAll(chunk.species);
+                    geneProducts.putAll(chunk.geneProducts);
+                    speciesCount += chunk.speciesCount;
+                }
+                for (StreamingConvertor chunk : convertChunks(pool, threads, file, root, reactionsList, "reaction", false)) {
+                    reactionCount += chunk.reactionCount;
+                    pendingAssociations.addAll(chunk.pendingAssociations);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        resolvePendingAssociations();
+    }
+
+    // convert the chunks of a list content in parallel, then send their statements in the document order. The species
+    // and gene products read by each chunk are kept in its own maps, or added to the parent's maps (which must then not
+    // be modified by other chunks, as for the reactions chunks)
+    private List<StreamingConvertor> convertChunks(ExecutorService pool, int threads, ByteBuffer file, Range root, Range list,
+                                                   String element, boolean ownEntries) throws XMLStreamException, InterruptedException {
+        //each chunk is parsed within the root element of the document, which declares the namespaces
+        byte[] documentStart = new byte[root.end];
+        file.get(0, documentStart);
+        String rootName = qualifiedName(file, root.start + 1);
+        byte[] documentEnd = ("</" + rootName + ">").getBytes(StandardCharsets.UTF_8);
+        String listName = qualifiedName(file, list.nameStart);
+        String prefix = listName.substring(0, listName.indexOf(':') + 1);
+
+        List<StreamingConvertor> chunks = new ArrayList<>();
+        //at most 2 chunks per thread are converted ahead of the one being sent, to bound the buffered statements
+        Deque<Future<List<Triple>>> tasks = new ArrayDeque<>();
+        try {
+            int chunkCount = Math.max(threads * 4, (list.end - list.start) / CHUNK_SIZE);
+            for (Range range : splitOnElements(file, list, prefix + element, chunkCount)) {
+                List<Triple> triples = new ArrayList<>();
+                StreamingConvertor chunk = new StreamingConvertor(this, new StreamRDFBase() {
+                    @Override
+                    public void triple(Triple triple) {
+                        triples.add(triple);
+                    }
+                }, ownEntries);
+                chunks.add(chunk);
+                tasks.add(pool.submit(() -> {
+                    chunk.parse(concat(new ByteArrayInputStream(documentStart),
+                            new BufferInputStream(file, range.start, range.end),
+                            new ByteArrayInputStream(documentEnd)));
+                    return triples;
+                }));
+                if (tasks.size() > threads * 2) send(tasks.poll().get());
+            }
+            while (!tasks.isEmpty()) send(tasks.poll().get());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof XMLStreamException) throw (XMLStreamException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        return chunks;
+    }
+
+    //send the statements of a converted chunk, and release them
+    private void send(List<Triple> triples) {
+        triples.forEach(out::triple);
+        triples.clear();
+    }
+
+    private void startElement(XMLStreamReader reader) throws XMLStreamException {
+        String ns = reader.getNamespaceURI();
+        String name = reader.getLocalName();
+
+        if (coreNS == null) {
+            readRoot(reader);
+        } else if (coreNS.equals(ns) && name.equals("annotation")) {
+            if (annotationTarget != null) readAnnotation(reader, annotationTarget);
+            else skipElement(reader);
+        } else if (coreNS.equals(ns) && name.equals("notes")) {
+            skipElement(reader);
+        } else if (coreNS.equals(ns)) {
+            annotationTarget = null;
+            switch (name) {
+                case "model": annotationTarget = readModel(reader); break;
+                case "compartment": annotationTarget = readCompartment(reader); break;
+                case "species": annotationTarget = readSpecies(reader); break;
+                case "reaction": annotationTarget = readReaction(reader); break;
+                case "listOfReactants": currentRole = SBMLRDF.REACTANT.asNode(); currentRefIndex = 0; break;
+                case "listOfProducts": currentRole = SBMLRDF.PRODUCT.asNode(); currentRefIndex = 0; break;
+                case "speciesReference": readSpeciesReference(reader); break;
+                case "modifierSpeciesReference": readModifierSpeciesReference(reader); break;
+                default: break;
+            }
+        } else if (isFbc(ns)) {
+            annotationTarget = null;
+            switch (name) {
+                case "geneProduct": annotationTarget = readGeneProduct(reader); break;
+                case "geneProductRef": readGeneProductRef(reader); break;
+                case "and":
+                case "or":
+                    if (currentReaction != null) gpaOperands.push(new ArrayList<>());
+                    break;
+                default: break;
+            }
+        }
+    }
+
+    private void endElement(XMLStreamReader reader) {
+        if (isFbc(reader.getNamespaceURI())) {
+            String name = reader.getLocalName();
+            if (currentReaction != null && (name.equals("and") || name.equals("or"))) {
+                addOperand(readOperator(name.equals("and"), gpaOperands.pop()));
+            }
+            return;
+        }
+        if (!Objects.equals(coreNS, reader.getNamespaceURI())) return;
+        switch (reader.getLocalName()) {
+            case "listOfReactants":
+            case "listOfProducts":
+                currentRole = null;
+                break;
+            case "reaction":
+                for (String geneId : currentGenes) {
+                    addGeneProductAssociation(currentReaction, geneId);
+                }
+                currentGenes.clear();
+                if (currentAssociation != null) {
+                    linkAssociation(currentReaction, NodeFactory.createURI(fbcNS + "#association"), currentAssociation);
+                }
+                currentAssociation = null;
+                gpaOperands.clear();
+                currentReaction = null;
+                break;
+            default:
+                break;
+        }
+    }
+
+    //keeps track of the sbml core namespace and level, and of the fbc namespace if the package is used
+    private void readRoot(XMLStreamReader reader) {
+        coreNS = reader.getNamespaceURI();
+        String sbmlLevel = reader.getAttributeValue(null, "level");
+        if (sbmlLevel != null) level = Integer.parseInt(sbmlLevel);
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            isFbc(reader.getNamespaceURI(i));
+        }
+    }
+
+    //check if a namespace is the fbc package's one, and register it at first encounter
+    private boolean isFbc(String ns) {
+        if (ns == null) return false;
+        if (fbcNS == null && ns.contains("/fbc/")) {
+            fbcNS = ns;
+            out.prefix("fbc", fbcNS + "#");
+        }
+        return ns.equals(fbcNS);
+    }
+
+    // Generate a node from a sbml id, using predefined base URI
+    private Node initNode(XMLStreamReader reader) {
+        return initNode(reader, attribute(reader, "id"));
+    }
+
+    private Node initNode(XMLStreamReader reader, String id) {
+        Node node = NodeFactory.createURI(modelNamespace + attribute(reader, "metaid"));
+        emit(node, RDFS.label.asNode(), NodeFactory.createLiteral(id));
+        return node;
+    }
+
+    private Node readModel(XMLStreamReader reader) {
+        sbmlNode = initNode(reader);
+        emit(sbmlNode, RDF.type.asNode(), SBMLRDF.SBMLMODEL.asNode());
+        emit(sbmlNode, SBMLRDF.NAME.asNode(), NodeFactory.createLiteral(attribute(reader, "name")));
+        return sbmlNode;
+    }
+
+    private Node readCompartment(XMLStreamReader reader) {
+        Node compartment = initNode(reader);
+        emit(compartment, RDF.type.asNode(), SBMLRDF.COMPARTMENT.asNode());
+        emit(compartment, SBMLRDF.NAME.asNode(), NodeFactory.createLiteral(attribute(reader, "name")));
+        emit(sbmlNode, SBMLRDF.HAS_COMPARTMENT.asNode(), compartment);
+        compartments.put(attribute(reader, "id"), compartment);
+        compartmentCount++;
+        return compartment;
+    }
+
+    private Node readSpecies(XMLStreamReader reader) {
+        Node specie = initNode(reader);
+        emit(specie, RDF.type.asNode(), SBMLRDF.SPECIE.asNode());
+        emit(specie, SBMLRDF.NAME.asNode(), NodeFactory.createLiteral(attribute(reader, "name")));
+        Node compartment = compartments.get(attribute(reader, "compartment"));
+        if (compartment != null) emit(specie, SBMLRDF.HAS_COMPARTMENT.asNode(), compartment);
+        emit(sbmlNode, SBMLRDF.HAS_SPECIE.asNode(), specie);
+        species.put(attribute(reader, "id"), specie);
+        speciesCount++;
+        return specie;
+    }
+
+    private Node readReaction(XMLStreamReader reader) {
+        Node reaction = initNode(reader);
+        emit(reaction, RDF.type.asNode(), SBMLRDF.REACTION.asNode());
+        emit(reaction, SBMLRDF.NAME.asNode(), NodeFactory.createLiteral(attribute(reader, "name")));
+        String reversible = reader.getAttributeValue(null, "reversible");
+        emit(reaction, SBMLRDF.REVERSIBLE.asNode(),
+                ResourceFactory.createTypedLiteral(reversible == null || Boolean.parseBoolean(reversible)).asNode());
+        emit(sbmlNode, SBMLRDF.HAS_REACTION.asNode(), reaction);
+        currentReaction = reaction;
+        currentModifierIndex = 0;
+        reactionCount++;
+        return reaction;
+    }
+
+    private void readSpeciesReference(XMLStreamReader reader) {
+        if (currentReaction == null || currentRole == null) return;
+        Node specieRef;
+        String metaId = reader.getAttributeValue(null, "metaid");
+        if (metaId == null || metaId.isBlank()) {
+            //create blank node, or skolem URI
+            String role = currentRole.equals(SBMLRDF.REACTANT.asNode()) ? "reactant" : "product";
+            specieRef = skolemize ? NodeFactory.createURI(Convertor.speciesRefURI(currentReaction.getURI(), role, currentRefIndex))
+                    : NodeFactory.createBlankNode();
+        } else {
+            specieRef = initNode(reader);
+        }
+        currentRefIndex++;
+        String stoichiometry = reader.getAttributeValue(null, "stoichiometry");
+        double value = stoichiometry != null ? Double.parseDouble(stoichiometry) : (level < 3 ? 1.0 : Double.NaN);
+        emit(specieRef, RDF.type.asNode(), SBMLRDF.SPECIESREF.asNode());
+        emit(specieRef, SBMLRDF.STOICHIOMETRY.asNode(), ResourceFactory.createTypedLiteral(value).asNode());
+        Node specie = species.get(attribute(reader, "species"));
+        if (specie != null) emit(specieRef, SBMLRDF.HAS_SPECIE.asNode(), specie);
+        emit(currentReaction, currentRole, specieRef);
+    }
+
+    private void readModifierSpeciesReference(XMLStreamReader reader) {
+        if (currentReaction == null) return;
+        Node modifierRef;
+        String metaId = reader.getAttributeValue(null, "metaid");
+        if (metaId == null || metaId.isBlank()) {
+            //create blank node, or skolem URI
+            modifierRef = skolemize ? NodeFactory.createURI(Convertor.speciesRefURI(currentReaction.getURI(), "modifier", currentModifierIndex))
+                    : NodeFactory.createBlankNode();
+        } else {
+            modifierRef = initNode(reader);
+        }
+        currentModifierIndex++;
+        emit(modifierRef, RDF.type.asNode(), SBMLRDF.MODIFIERSPECIESREF.asNode());
+        Node specie = species.get(attribute(reader, "species"));
+        if (specie != null) emit(modifierRef, SBMLRDF.HAS_SPECIE.asNode(), specie);
+        emit(currentReaction, SBMLRDF.MODIFIER.asNode(), modifierRef);
+    }
+
+    private Node readGeneProduct(XMLStreamReader reader) {
+        Node gene = initNode(reader, fbcAttribute(reader, "id"));
+        emit(gene, RDF.type.asNode(), NodeFactory.createURI(fbcNS + "#geneProduct"));
+        emit(gene, SBMLRDF.NAME.asNode(), NodeFactory.createLiteral(fbcAttribute(reader, "label")));
+        geneProducts.put(fbcAttribute(reader, "id"), gene);
+        return gene;
+    }
+
+    private void readGeneProductRef(XMLStreamReader reader) {
+        if (currentReaction == null) return;
+        String geneId = fbcAttribute(reader, "geneProduct");
+        if (gpaMode != Convertor.GPAMode.STRUCTURED) currentGenes.add(geneId);
+        addOperand(Convertor.gpaGeneKey(geneId));
+    }
+
+    //add an operand to the and/or element being read, or set the whole association of the reaction
+    private void addOperand(String key) {
+        if (gpaOperands.isEmpty()) currentAssociation = key;
+        else gpaOperands.peek().add(key);
+    }
+
+    //convert an and/or expression the first time it is read, and return its canonical form
+    private String readOperator(boolean and, List<String> operands) {
+        String key = Convertor.gpaOperatorKey(and, operands);
+        if (gpaMode != Convertor.GPAMode.FLAT && gpaOperators.add(key)) {
+            Node operator = NodeFactory.createURI(Convertor.gpaNodeURI(modelNamespace, key));
+            emit(operator, RDF.type.asNode(), NodeFactory.createURI(fbcNS + (and ? "#and" : "#or")));
+            for (String operand : operands) {
+                linkAssociation(operator, NodeFactory.createURI(fbcNS + "#association"), operand);
+            }
+        }
+        return key;
+    }
+
+    //link to an operand of an association: an and/or expression (whose canonical form has parentheses) or a gene product
+    private void linkAssociation(Node subject, Node property, String key) {
+        if (gpaMode == Convertor.GPAMode.FLAT) return;
+        if (key.endsWith(")")) emit(subject, property, NodeFactory.createURI(Convertor.gpaNodeURI(modelNamespace, key)));
+        else linkGeneProduct(subject, property, key);
+    }
+
+    private void addGeneProductAssociation(Node reaction, String geneId) {
+        linkGeneProduct(reaction, NodeFactory.createURI(fbcNS + "#geneProductAssociation"), geneId);
+    }
+
+    private void linkGeneProduct(Node subject, Node property, String geneId) {
+        Node gene = geneProducts.get(geneId);
+        if (gene == null) {
+            pendingAssociations.add(new PendingLink(subject, property, geneId));
+        } else {
+            emit(subject, property, gene);
+        }
+    }
+
+    private void resolvePendingAssociations() {
+        for (PendingLink link : pendingAssociations) {
+            Node gene = geneProducts.get(link.geneId);
+            if (gene != null) emit(link.subject, link.property, gene);
+        }
+        pendingAssociations.clear();
+    }
+
+    //a link toward a gene product not read yet
+    private record PendingLink(Node subject, Node property, String geneId) {
+    }
+
+    /**
+     * Parse the sbml annotations (bqbiol:is) and skip other content. Annotations are always the first children of
+     * an element (after the notes), so they are attached to the last element read.
+     */
+    private void readAnnotation(XMLStreamReader reader, Node target) throws XMLStreamException {
+        int depth = 1;
+        String qualifier = null;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (BQBIOL_NS.equals(reader.getNamespaceURI())) {
+                    qualifier = reader.getLocalName();
+                } else if (qualifier != null && RDF.getURI().equals(reader.getNamespaceURI()) && reader.getLocalName().equals("li")) {
+                    String resourceURI = reader.getAttributeValue(RDF.getURI(), "resource");
+                    if (resourceURI != null) {
+                        emit(target, NodeFactory.createURI(SBMLRDF.BQURI + qualifier), NodeFactory.createURI(resourceURI));
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                if (BQBIOL_NS.equals(reader.getNamespaceURI())) qualifier = null;
+            }
+        }
+    }
+
+    //consume an element and its content
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+        }
+    }
+
+    //get an attribute value, or an empty string if not set, as JSBML does
+    private static String attribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value == null ? "" : value;
+    }
+
+    //get an attribute value from the fbc namespace, or an empty string if not set
+    private String fbcAttribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(fbcNS, name);
+        return value == null ? "" : value;
+    }
+
+    private void emit(Node s, Node p, Node o) {
+        out.triple(Triple.create(s, p, o));
+    }
+
+    //a range of bytes of the file, and for the content of a list, the position of the list element name
+    private record Range(int start, int end, int nameStart) {
+        Range(int start, int end) {
+            this(start, end, start);
+        }
+    }
+
+    //locate the start tag of the root element, skipping the xml declaration, comments and doctype
+    private static Range rootElement(ByteBuffer file) {
+        int i = 0;
+        while ((i = indexOf(file, (byte) '<', i, file.limit())) >= 0) {
+            if (i + 1 < file.limit() && file.get(i + 1) != '?' && file.get(i + 1) != '!') {
+                int end = tagEnd(file, i);
+                return end < 0 ? null : new Range(i, end);
+            }
+            if (i + 3 < file.limit() && file.get(i + 1) == '!' && file.get(i + 2) == '-' && file.get(i + 3) == '-') {
+                i = indexOf(file, "-->".getBytes(StandardCharsets.US_ASCII), i, file.limit());
+                if (i < 0) return null;
+            }
+            i++;
+        }
+        return null;
+    }
+
+    //locate the content of the first element with the given local name after a position, null if not found or empty
+    private static Range listContent(ByteBuffer file, int from, String localName) {
+        int tagStart = findStartTag(file, from, file.limit(), localName);
+        if (tagStart < 0) return null;
+        int contentStart = tagEnd(file, tagStart);
+        if (contentStart < 0 || file.get(contentStart - 2) == '/') return null;
+        byte[] endTag = ("</" + qualifiedName(file, tagStart + 1)).getBytes(StandardCharsets.UTF_8);
+        int contentEnd = contentStart;
+        while ((contentEnd = indexOf(file, endTag, contentEnd, file.limit())) >= 0 && !isNameEnd(file, contentEnd + endTag.length)) {
+            contentEnd++;
+        }
+        return contentEnd < 0 ? null : new Range(contentStart, contentEnd, tagStart + 1);
+    }
+
+    //split a list content in at most n ranges of similar size, each one starting with an element start tag
+    private static List<Range> splitOnElements(ByteBuffer file, Range list, String qualifiedName, int n) {
+        byte[] startTag = ("<" + qualifiedName).getBytes(StandardCharsets.UTF_8);
+        List<Range> ranges = new ArrayList<>();
+        int size = Math.max(1, (list.end - list.start) / n);
+        int start = list.start;
+        while (start < list.end) {
+            int end = start + size;
+            while (end < list.end && ((end = indexOf(file, startTag, end, list.end)) >= 0) && !isNameEnd(file, end + startTag.length)) {
+                end++;
+            }
+            if (end < 0 || end > list.end) end = list.end;
+            ranges.add(new Range(start, end));
+            start = end;
+        }
+        return ranges;
+    }
+
+    //find the start tag of an element with the given local name and any prefix, returns the position of its '<'
+    private static int findStartTag(ByteBuffer file, int from, int to, String localName) {
+        byte[] name = localName.getBytes(StandardCharsets.UTF_8);
+        int i = from;
+        while ((i = indexOf(file, name, i, to)) >= 0) {
+            if (isNameEnd(file, i + name.length)) {
+                int j = i - 1;
+                if (j >= from && file.get(j) == ':') {
+                    j--;
+                    while (j >= from && isNameChar(file.get(j))) j--;
+                }
+                if (j >= from && file.get(j) == '<') return j;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    //the qualified name of the element whose name starts at a position
+    private static String qualifiedName(ByteBuffer file, int from) {
+        int end = from;
+        while (end < file.limit() && (isNameChar(file.get(end)) || file.get(end) == ':')) end++;
+        byte[] name = new byte[end - from];
+        file.get(from, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    //the position after the '>' closing a tag, ignoring the '>' in the attributes values
+    private static int tagEnd(ByteBuffer file, int tagStart) {
+        byte quote = 0;
+        for (int i = tagStart; i < file.limit(); i++) {
+            byte b = file.get(i);
+            if (quote != 0) {
+                if (b == quote) quote = 0;
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isNameEnd(ByteBuffer file, int i) {
+        if (i >= file.limit()) return false;
+        byte b = file.get(i);
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static boolean isNameChar(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_' || b == '-' || b == '.' || b < 0;
+    }
+
+    private static int indexOf(ByteBuffer file, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (file.get(i) == b) return i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer file, byte[] pattern, int from, int to) {
+        int last = to - pattern.length;
+        for (int i = from; i <= last; i++) {
+            if (file.get(i) != pattern[0]) continue;
+            int j = 1;
+            while (j < pattern.length && file.get(i + j) == pattern[j]) j++;
+            if (j == pattern.length) return i;
+        }
+        return -1;
+    }
+
+    private static InputStream concat(InputStream... parts) {
+        return new SequenceInputStream(Collections.enumeration(List.of(parts)));
+    }
+
+    //an input stream reading a range of a buffer, without copying it
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer.slice(start, end - start);
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * @return the number of compartments read
+     */
+    public int getCompartmentCount() {
+        return compartmentCount;
+    }
+
+    /**
+     * @return the number of species read
+     */
+    public int getSpeciesCount() {
+        return speciesCount;
+    }
+
+    /**
+     * @return the number of reactions read
+     */
+    public int getReactionCount() {
+        return reactionCount;
+    }
+}
@@ -0,0 +1,151 @@
+import org.sbml.jsbml.*;
+import org.sbml.jsbml.ext.fbc.FBCReactionPlugin;
+import org.sbml.jsbml.ext.fbc.GeneProduct;
+import org.sbml.jsbml.ext.fbc.GeneProductRef;
+
+import java.util.*;
+
+/**
+ * The Class SubsetFilter selects a slice of a sbml model to convert: the reactions matching all the set criteria (a list
+ * of reaction ids, a list of compartments, a list of SBO terms), with the species they reference (reactants, products
+ * and modifiers), the compartments of these species and the gene products of their associations.
+ * A reaction is in a compartment if its compartment attribute, or the compartment of one of its reactants or products,
+ * is one of the selected compartments. Reactions listed by id are looked up directly, without scanning the model.
+ */
+public class SubsetFilter {
+
+    private final Set<String> reactionIds = new LinkedHashSet<>();
+    private final Set<String> compartmentIds = new HashSet<>();
+    private final Set<Integer> sboTerms = new HashSet<>();
+
+    /**
+     * @param reactionIds the sbml ids of the reactions to select
+     * @return this filter
+     */
+    public SubsetFilter setReactions(Collection<String> reactionIds) {
+        for (String id : reactionIds) if (!id.isBlank()) this.reactionIds.add(id.trim());
+        return this;
+    }
+
+    /**
+     * @param compartmentIds the sbml ids of the compartments whose reactions are selected
+     * @return this filter
+     */
+    public SubsetFilter setCompartments(Collection<String> compartmentIds) {
+        for (String id : compartmentIds) if (!id.isBlank()) this.compartmentIds.add(id.trim());
+        return this;
+    }
+
+    /**
+     * @param sboTerms the SBO terms of the reactions to select (such as SBO:0000176, or 176)
+     * @return this filter
+     */
+    public SubsetFilter setSBOTerms(Collection<String> sboTerms) {
+        for (String term : sboTerms) if (!term.isBlank()) this.sboTerms.add(parseSBO(term));
+        return this;
+    }
+
+    // the number of a SBO term, with or without the SBO: prefix
+    private static int parseSBO(String term) {
+        String number = term.trim();
+        if (number.regionMatches(true, 0, "SBO:", 0, 4)) number = number.substring(4);
+        try {
+            return Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a SBO term : " + term);
+        }
+    }
+
+    /**
+     * @return a description of the criteria, empty if no criteria are set
+     */
+    public String getKey() {
+        if (isEmpty()) return "";
+        return "reactions=" + String.join(",", new TreeSet<>(reactionIds)) +
+                ";compartments=" + String.join(",", new TreeSet<>(compartmentIds)) +
+                ";sbo=" + new TreeSet<>(sboTerms);
+    }
+
+    /**
+     * @return true if no criteria are set, all the model being selected
+     */
+    public boolean isEmpty() {
+        return reactionIds.isEmpty() && compartmentIds.isEmpty() && sboTerms.isEmpty();
+    }
+
+    /**
+     * The elements of a model selected by a filter, in the order they are first referenced
+     */
+    public static class Selection {
+        /** the selected compartments */
+        public final List<Compartment> compartments;
+        /** the selected species */
+        public final List<Species> species;
+        /** the selected reactions */
+        public final List<Reaction> reactions;
+        /** the selected gene products */
+        public final List<GeneProduct> geneProducts;
+
+        private Selection(Collection<Compartment> compartments, Collection<Species> species, List<Reaction> reactions,
+                          Collection<GeneProduct> geneProducts) {
+            this.compartments = new ArrayList<>(compartments);
+            this.species = new ArrayList<>(species);
+            this.reactions = reactions;
+            this.geneProducts = new ArrayList<>(geneProducts);
+        }
+    }
+
+    /**
+     * Select the reactions matching the criteria, and the elements they reference
+     * @param sbmlModel the sbml model
+     * @return the selected elements
+     */
+    public Selection select(Model sbmlModel) {
+        Collection<Reaction> candidates;
+        if (reactionIds.isEmpty()) {
+            candidates = sbmlModel.getListOfReactions();
+        } else {
+            candidates = new ArrayList<>(reactionIds.size());
+            for (String id : reactionIds) {
+                Reaction reaction = sbmlModel.getReaction(id);
+                if (reaction != null) candidates.add(reaction);
+            }
+        }
+
+        List<Reaction> reactions = new ArrayList<>();
+        Set<Species> species = new LinkedHashSet<>();
+        Set<Compartment> compartments = new LinkedHashSet<>();
+        Set<GeneProduct> geneProducts = new LinkedHashSet<>();
+        for (Reaction reaction : candidates) {
+            if (!sboTerms.isEmpty() && !sboTerms.contains(reaction.getSBOTerm())) continue;
+            if (!compartmentIds.isEmpty() && !inCompartments(reaction)) continue;
+            reactions.add(reaction);
+            for (SpeciesReference ref : reaction.getListOfReactants()) species.add(ref.getSpeciesInstance());
+            for (SpeciesReference ref : reaction.getListOfProducts()) species.add(ref.getSpeciesInstance());
+            if (reaction.isSetListOfModifiers()) { //getListOfModifiers would create an empty list
+                for (ModifierSpeciesReference ref : reaction.getListOfModifiers()) species.add(ref.getSpeciesInstance());
+            }
+            if (reaction.isSetPlugin("fbc")) { //getPlugin would create an empty plugin
+                FBCReactionPlugin fbc = (FBCReactionPlugin) reaction.getPlugin("fbc");
+                if (fbc.isSetGeneProductAssociation() && fbc.getGeneProductAssociation().isSetAssociation()) {
+                    for (GeneProductRef ref : Convertor.parseGPA(fbc.getGeneProductAssociation().getAssociation())) {
+                        geneProducts.add(ref.getGeneProductInstance());
+                    }
+                }
+            }
+        }
+        for (Species s : species) compartments.add(s.getCompartmentInstance());
+        return new Selection(compartments, species, reactions, geneProducts);
+    }
+
+    private boolean inCompartments(Reaction reaction) {
+        if (reaction.isSetCompartment() && compartmentIds.contains(reaction.getCompartment())) return true;
+        for (SpeciesReference ref : reaction.getListOfReactants()) {
+            if (compartmentIds.contains(ref.getSpeciesInstance().getCompartment())) return true;
+        }
+        for (SpeciesReference ref : reaction.getListOfProducts()) {
+            if (compartmentIds.contains(ref.getSpeciesInstance().getCompartment())) return true;
+        }
+        return false;
+    }
+}
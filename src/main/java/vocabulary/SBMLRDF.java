@@ -46,6 +46,7 @@ public class SBMLRDF {
     public final static Resource SPECIE = resource("Species");
     public final static Resource REACTION = resource("Reaction");
     public final static Resource SPECIESREF = resource("SpeciesReference");
+    public final static Resource MODIFIERSPECIESREF = resource("ModifierSpeciesReference");
 
     public final static Property NAME = property("name");
     public final static Property NOTES = property("notes");
@@ -1,6 +1,23 @@
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.rdf.model.*;
+import org.apache.jena.rdfpatch.RDFPatchOps;
+import org.apache.jena.rdfpatch.changes.RDFChangesCollector;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.system.StreamRDFOps;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.TDB2Factory;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
+import org.apache.jena.vocabulary.SKOS;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -11,9 +28,28 @@ import org.sbml.jsbml.ext.fbc.*;
 import vocabulary.SBMLRDF;
 
 import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -128,6 +164,7 @@ public class ConvertorTest {
         r2.addProduct(dr2);
         r2.setReversible(true);
         r2.setSBOTerm(0000167);
+        r2.addModifier(new ModifierSpeciesReference(e));
 
         r3 = model.createReaction("r3");
         r3.setMetaId(r3.getId());
@@ -299,6 +336,12 @@ public class ConvertorTest {
         assertTrue(rdf.containsLiteral(r2node,SBMLRDF.REVERSIBLE,true));
         assertFalse(rdf.containsLiteral(r2node,SBMLRDF.REVERSIBLE,false));
 
+        stmnts = rdf.listObjectsOfProperty(r2node,SBMLRDF.MODIFIER).toList();
+        assertTrue(stmnts.size()==1);
+        assertTrue(rdf.contains(stmnts.get(0).asResource(),RDF.type,SBMLRDF.MODIFIERSPECIESREF));
+        assertTrue(rdf.contains(stmnts.get(0).asResource(),SBMLRDF.HAS_SPECIE,enode));
+        assertFalse(rdf.listObjectsOfProperty(r1node,SBMLRDF.MODIFIER).hasNext());
+
         //test R3
         stmnts = rdf.listObjectsOfProperty(r3node,SBMLRDF.REACTANT).toList();
         assertTrue(stmnts.size()==1);
@@ -335,4 +378,758 @@ public class ConvertorTest {
         assertTrue(rdf.containsLiteral(rtanode,SBMLRDF.REVERSIBLE,true));
         assertFalse(rdf.containsLiteral(rtanode,SBMLRDF.REVERSIBLE,false));
     }
+
+    @Test
+    public void testStreamingConvertor() throws XMLStreamException {
+        String baseUri = "org.mytest";
+        String sbml = new SBMLWriter().writeSBMLToString(doc);
+
+        Convertor conv = new Convertor(new SBMLReader().readSBMLFromString(sbml).getModel(),baseUri);
+        conv.run();
+        org.apache.jena.rdf.model.Model expected = conv.getRdfModel();
+
+        org.apache.jena.rdf.model.Model rdf = ModelFactory.createDefaultModel();
+        StreamingConvertor streamConv = new StreamingConvertor(baseUri, StreamRDFLib.graph(rdf.getGraph()));
+        streamConv.run(new ByteArrayInputStream(sbml.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(expected.size(), rdf.size());
+        assertTrue(expected.isIsomorphicWith(rdf));
+        assertEquals(3, streamConv.getCompartmentCount());
+        assertEquals(8, streamConv.getSpeciesCount());
+        assertEquals(6, streamConv.getReactionCount());
+    }
+
+    @Test
+    public void testStreamingRunParallel() throws XMLStreamException, IOException, InterruptedException {
+        String baseUri = "org.mytest";
+        Path sbml = Files.createTempFile("model", ".xml");
+        try {
+            new SBMLWriter().write(doc, sbml.toFile());
+            org.apache.jena.rdf.model.Model expected = ModelFactory.createDefaultModel();
+            StreamingConvertor streamConv = new StreamingConvertor(baseUri, StreamRDFLib.graph(expected.getGraph()));
+            streamConv.setGpaMode(Convertor.GPAMode.BOTH);
+            try (InputStream in = Files.newInputStream(sbml)) {
+                streamConv.run(in);
+            }
+
+            //one chunk per species, reaction and gene product
+            org.apache.jena.rdf.model.Model rdf = ModelFactory.createDefaultModel();
+            StreamingConvertor parallelConv = new StreamingConvertor(baseUri, StreamRDFLib.graph(rdf.getGraph()));
+            parallelConv.setGpaMode(Convertor.GPAMode.BOTH);
+            parallelConv.runParallel(sbml, 3);
+
+            assertEquals(expected.size(), rdf.size());
+            assertTrue(expected.isIsomorphicWith(rdf));
+            assertEquals(3, parallelConv.getCompartmentCount());
+            assertEquals(8, parallelConv.getSpeciesCount());
+            assertEquals(6, parallelConv.getReactionCount());
+        } finally {
+            Files.delete(sbml);
+        }
+    }
+
+    @Test
+    public void testStreamRDFOutput(){
+        String baseUri = "org.mytest";
+        //a1 is annotated twice with the same identifier, so the annotation statement is created twice
+        a1.addCVTerm(new CVTerm(CVTerm.Qualifier.BQB_IS, "http://identifiers.org/chebi/CHEBI:15422"));
+        a1.addCVTerm(new CVTerm(CVTerm.Qualifier.BQB_IS, "http://identifiers.org/chebi/CHEBI:15422"));
+        Convertor conv = new Convertor(model,baseUri);
+        conv.run();
+        org.apache.jena.rdf.model.Model expected = conv.getRdfModel();
+
+        org.apache.jena.rdf.model.Model rdf = ModelFactory.createDefaultModel();
+        StreamRDF out = StreamRDFLib.graph(rdf.getGraph());
+        out.start();
+        Convertor streamConv = new Convertor(model, out, baseUri);
+        streamConv.run();
+        out.finish();
+
+        assertTrue(expected.isIsomorphicWith(rdf));
+        assertEquals(expected.getNsPrefixMap(), rdf.getNsPrefixMap());
+        assertFalse(streamConv.getRdfModel().listStatements().hasNext());
+        assertTrue(streamConv.getRdfModel().size() > rdf.size());
+
+        //the serialized stream repeats these statements, which are merged when it is read
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        StreamRDF writer = OutputFormat.NTRIPLES.stream(serialized);
+        writer.start();
+        new Convertor(model, writer, baseUri).run();
+        writer.finish();
+        assertTrue(serialized.toString(StandardCharsets.UTF_8).lines().count() > expected.size());
+        org.apache.jena.rdf.model.Model read = ModelFactory.createDefaultModel();
+        read.read(new ByteArrayInputStream(serialized.toByteArray()), null, "N-TRIPLES");
+        assertTrue(expected.isIsomorphicWith(read));
+    }
+
+    @Test
+    public void testRunParallel() throws InterruptedException {
+        String baseUri = "org.mytest";
+        //an exchange reaction, without products
+        Reaction ex = model.createReaction("ex");
+        ex.setMetaId(ex.getId());
+        ex.createReactant(a1);
+        int children = ex.getChildCount();
+        Convertor conv = new Convertor(model,baseUri);
+        conv.run();
+        org.apache.jena.rdf.model.Model expected = conv.getRdfModel();
+
+        Convertor parallelConv = new Convertor(model,baseUri);
+        parallelConv.runParallel(3);
+        org.apache.jena.rdf.model.Model rdf = parallelConv.getRdfModel();
+
+        assertEquals(expected.size(), rdf.size());
+        assertTrue(expected.isIsomorphicWith(rdf));
+        //the conversion threads only read the sbml model: no empty list of products or modifiers was registered
+        assertEquals(children, ex.getChildCount());
+    }
+
+    @Test
+    public void testSubset() throws InterruptedException {
+        String baseUri = "org.mytest";
+        String ns = baseUri+"#";
+        Convertor conv = new Convertor(model,baseUri);
+        conv.run();
+        org.apache.jena.rdf.model.Model full = conv.getRdfModel();
+
+        //by reaction id: the reaction and the species, compartments and gene products it references
+        Convertor subsetConv = new Convertor(model,baseUri);
+        subsetConv.setSubset(new SubsetFilter().setReactions(List.of("r1", "unknown")));
+        subsetConv.run();
+        org.apache.jena.rdf.model.Model rdf = subsetConv.getRdfModel();
+        assertTrue(containsNamed(full, rdf));
+        assertEquals(1, rdf.listSubjectsWithProperty(RDF.type, SBMLRDF.REACTION).toList().size());
+        assertEquals(3, rdf.listSubjectsWithProperty(RDF.type, SBMLRDF.SPECIE).toList().size());
+        assertEquals(1, rdf.listSubjectsWithProperty(RDF.type, SBMLRDF.COMPARTMENT).toList().size());
+        assertTrue(rdf.containsResource(rdf.getResource(ns+"g1")));
+        assertFalse(rdf.containsResource(rdf.getResource(ns+"r2")));
+
+        //by compartment: the reactions with a participant in cmp2, including the transports from cmp1
+        subsetConv = new Convertor(model,baseUri);
+        subsetConv.setSubset(new SubsetFilter().setCompartments(List.of("cmp2")));
+        subsetConv.run();
+        rdf = subsetConv.getRdfModel();
+        assertTrue(containsNamed(full, rdf));
+        assertEquals(4, rdf.listSubjectsWithProperty(RDF.type, SBMLRDF.REACTION).toList().size());
+        assertEquals(6, rdf.listSubjectsWithProperty(RDF.type, SBMLRDF.SPECIE).toList().size());
+        assertEquals(2, rdf.listSubjectsWithProperty(RDF.type, SBMLRDF.COMPARTMENT).toList().size());
+        assertFalse(rdf.containsResource(rdf.getResource(ns+"g1")));
+
+        //combined criteria, converted in parallel
+        subsetConv = new Convertor(model,baseUri);
+        subsetConv.setSubset(new SubsetFilter().setCompartments(List.of("cmp1")).setSBOTerms(List.of("SBO:0000176")));
+        subsetConv.runParallel(3);
+        rdf = subsetConv.getRdfModel();
+        assertTrue(containsNamed(full, rdf));
+        assertEquals(List.of(rdf.getResource(ns+"r1")), rdf.listSubjectsWithProperty(RDF.type, SBMLRDF.REACTION).toList());
+
+        //no criteria: the whole model
+        subsetConv = new Convertor(model,baseUri);
+        subsetConv.setSubset(new SubsetFilter());
+        subsetConv.run();
+        assertTrue(full.isIsomorphicWith(subsetConv.getRdfModel()));
+    }
+
+    // true if all the statements of the subset which don't involve blank nodes are in the model
+    private static boolean containsNamed(org.apache.jena.rdf.model.Model model, org.apache.jena.rdf.model.Model subset){
+        return subset.listStatements().filterDrop(st -> st.getSubject().isAnon() || st.getObject().isAnon())
+                .filterDrop(model::contains).toList().isEmpty();
+    }
+
+    @Test
+    public void testDatasetLoader(){
+        String baseUri = "org.mytest";
+        Convertor conv = new Convertor(model,baseUri);
+        conv.run();
+        org.apache.jena.rdf.model.Model expected = conv.getRdfModel();
+
+        Dataset store = TDB2Factory.createDataset();
+        DatasetLoader loader = new DatasetLoader(store, baseUri, 5);
+        loader.start();
+        new Convertor(model, loader, baseUri).run();
+        loader.finish();
+
+        assertFalse(store.isInTransaction());
+        assertEquals(expected.size(), loader.getLoaded());
+        //TDB2 stores numbers in canonical form, so statements are compared by value (except those with blank nodes)
+        Txn.executeRead(store, () -> {
+            org.apache.jena.rdf.model.Model stored = store.getNamedModel(baseUri);
+            assertEquals(expected.size(), stored.size());
+            expected.listStatements().forEachRemaining(st -> {
+                if(!st.getSubject().isAnon() && !st.getObject().isAnon()) assertTrue(st.toString(), stored.contains(st));
+            });
+        });
+
+        //an aborted load, after some committed batches, keeps the previous version
+        DatasetLoader failing = new DatasetLoader(store, baseUri, 5);
+        failing.start();
+        expected.listStatements().toList().subList(0, 12).forEach(st -> failing.triple(st.asTriple()));
+        failing.abort();
+        Txn.executeRead(store, () -> {
+            assertEquals(expected.size(), store.getNamedModel(baseUri).size());
+            assertFalse(store.containsNamedModel(failing.getStagingGraphURI()));
+        });
+    }
+
+    @Test
+    public void testSkolemize() throws XMLStreamException {
+        String baseUri = "org.mytest";
+        Convertor conv = new Convertor(model, baseUri);
+        conv.setSkolemize(true);
+        conv.run();
+        org.apache.jena.rdf.model.Model expected = conv.getRdfModel();
+        assertFalse(expected.listStatements().filterKeep(st -> st.getSubject().isAnon() || st.getObject().isAnon()).hasNext());
+        assertTrue(expected.contains(ResourceFactory.createResource(baseUri+"#r1/product/1"), SBMLRDF.HAS_SPECIE, ResourceFactory.createResource(baseUri+"#c1")));
+        assertTrue(expected.contains(ResourceFactory.createResource(baseUri+"#r2/modifier/0"), SBMLRDF.HAS_SPECIE, ResourceFactory.createResource(baseUri+"#e")));
+
+        //same URIs from the streaming parser and the compact model
+        org.apache.jena.rdf.model.Model streamed = ModelFactory.createDefaultModel();
+        StreamingConvertor streamConv = new StreamingConvertor(baseUri, StreamRDFLib.graph(streamed.getGraph()));
+        streamConv.setSkolemize(true);
+        streamConv.run(new ByteArrayInputStream(new SBMLWriter().writeSBMLToString(doc).getBytes(StandardCharsets.UTF_8)));
+        assertTrue(containsNamed(streamed, expected.listStatements(null, RDF.type, SBMLRDF.SPECIESREF).toModel()));
+        assertTrue(containsNamed(streamed, expected.listStatements(null, SBMLRDF.HAS_SPECIE, (RDFNode) null).toModel()));
+
+        CompactModel compact = CompactModel.fromModel(model, baseUri, new SubsetFilter());
+        compact.setSkolemize(true);
+        org.apache.jena.rdf.model.Model rdf = ModelFactory.createDefaultModel();
+        compact.write(StreamRDFLib.graph(rdf.getGraph()), Convertor.GPAMode.FLAT);
+        assertEquals(expected.size(), rdf.size());
+        assertTrue(expected.isIsomorphicWith(rdf));
+    }
+
+    @Test
+    public void testConvertToStore()throws XMLStreamException, IOException, InterruptedException {
+        String baseUri = "org.mytest";
+        Path sbml = Files.createTempFile("model", ".xml");
+        try {
+            new SBMLWriter().write(doc, sbml.toFile());
+            ConversionPipeline pipeline = new ConversionPipeline();
+            pipeline.setAddMetaboLinks(true);
+            org.apache.jena.rdf.model.Model expected = pipeline.convert(sbml.toString(), baseUri, new ConversionMetrics());
+            pipeline.enhance(expected, new ConversionMetrics());
+
+            //converting the model again replaces the stored graph, with its blank nodes
+            Dataset store = TDB2Factory.createDataset();
+            assertEquals(expected.size(), pipeline.convertToStore(sbml.toString(), baseUri, store, new ConversionMetrics()));
+            assertEquals(expected.size(), pipeline.convertToStore(sbml.toString(), baseUri, store, new ConversionMetrics()));
+
+            //and removes the statements of a previous version
+            r3.removeReactant(0);
+            new SBMLWriter().write(doc, sbml.toFile());
+            long updated = pipeline.convertToStore(sbml.toString(), baseUri, store, new ConversionMetrics());
+            assertTrue(updated < expected.size());
+            Txn.executeRead(store, () -> {
+                org.apache.jena.rdf.model.Model stored = store.getNamedModel(baseUri);
+                assertEquals(updated, stored.size());
+                assertFalse(stored.contains(ResourceFactory.createResource(baseUri+"#c2"), SBMLRDF.IMMEDIATELY_DERIVES_INTO, ResourceFactory.createResource(baseUri+"#e")));
+            });
+
+            //a failed conversion keeps the stored version, without leaving the staging graph
+            String content = new SBMLWriter().writeSBMLToString(doc);
+            Files.writeString(sbml, content.substring(0, content.indexOf("</listOfReactions>")));
+            boolean failed = false;
+            try {
+                pipeline.convertToStore(sbml.toString(), baseUri, store, new ConversionMetrics());
+            } catch (XMLStreamException | RuntimeException e) {
+                failed = true;
+            }
+            assertTrue(failed);
+            Txn.executeRead(store, () -> {
+                assertEquals(updated, store.getNamedModel(baseUri).size());
+                assertFalse(store.containsNamedModel(DatasetLoader.STAGING_PREFIX + baseUri));
+            });
+        } finally {
+            Files.delete(sbml);
+        }
+    }
+
+    @Test
+    public void testBatchConvertor() throws XMLStreamException, IOException, InterruptedException {
+        String baseUri = "http://org.mytest/";
+        Path directory = Files.createTempDirectory("models");
+        Path output = Files.createTempDirectory("rdf");
+        try {
+            new SBMLWriter().write(doc, directory.resolve("a.xml").toFile());
+            new SBMLWriter().write(doc, directory.resolve("b.sbml").toFile());
+            Files.writeString(directory.resolve("c.xml"), "<sbml><model");
+            ConversionPipeline pipeline = new ConversionPipeline();
+            org.apache.jena.rdf.model.Model expected = pipeline.convert(directory.resolve("a.xml").toString(), baseUri + "a", new ConversionMetrics());
+            List<BatchConvertor.Job> jobs = BatchConvertor.fromDirectory(directory.toString(), baseUri);
+            assertEquals(List.of("a", "b", "c"), jobs.stream().map(job -> job.name).collect(Collectors.toList()));
+
+            //one file per model, the invalid one being counted and skipped
+            assertEquals(1, new BatchConvertor(pipeline, 2).run(jobs, output.toString(), null));
+            assertTrue(expected.isIsomorphicWith(RDFDataMgr.loadModel(output.resolve("a.ttl").toString())));
+            assertTrue(Files.exists(output.resolve("b.ttl")));
+            assertFalse(Files.exists(output.resolve("c.ttl")));
+
+            //one named graph per model
+            String nquads = output.resolve("models.nq").toString();
+            assertEquals(1, new BatchConvertor(pipeline, 2).run(jobs, nquads, null));
+            Dataset loaded = RDFDataMgr.loadDataset(nquads);
+            assertTrue(expected.isIsomorphicWith(loaded.getNamedModel(baseUri + "a")));
+            assertEquals(expected.size(), loaded.getNamedModel(baseUri + "b").size());
+            assertFalse(loaded.containsNamedModel(baseUri + "c"));
+
+            //two files can't give the same model
+            new SBMLWriter().write(doc, directory.resolve("a.sbml").toFile());
+            try {
+                BatchConvertor.fromDirectory(directory.toString(), baseUri);
+                assertTrue("duplicate model names must be rejected", false);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("same model name a"));
+            }
+        } finally {
+            for (Path dir : List.of(directory, output)) {
+                try (Stream<Path> files = Files.walk(dir)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConversionMetrics() throws XMLStreamException, IOException, InterruptedException {
+        String baseUri = "org.mytest";
+        ConversionPipeline pipeline = new ConversionPipeline();
+        pipeline.setLinkCompartments(true);
+        pipeline.setAddMetaboLinks(true);
+        ConversionMetrics metrics = new ConversionMetrics();
+        metrics.setInfo("uri", baseUri);
+        org.apache.jena.rdf.model.Model rdf = ModelFactory.createDefaultModel();
+        pipeline.convert(new ByteArrayInputStream(new SBMLWriter().writeSBMLToString(doc).getBytes(StandardCharsets.UTF_8)), baseUri, rdf, metrics);
+        long converted = rdf.size();
+        pipeline.enhance(rdf, metrics);
+
+        Path report = Files.createTempFile("metrics", ".json");
+        try {
+            metrics.write(report.toString());
+            JsonObject json;
+            try (InputStream in = Files.newInputStream(report)) {
+                json = JSON.parse(in);
+            }
+            assertEquals(baseUri, json.get("uri").getAsString().value());
+            assertTrue(json.get("totalTimeMs").getAsNumber().value().doubleValue() >= 0);
+            Map<String, JsonObject> stages = new LinkedHashMap<>();
+            json.get("stages").getAsArray().forEach(stage -> stages.put(stage.getAsObject().get("name").getAsString().value(), stage.getAsObject()));
+            assertEquals(List.of("parsing", "convertModel", "convertCompartments", "convertSpecies", "convertReactions",
+                    "convertGenes", "harmonizeCompartments", "addMetaboLinks"), List.copyOf(stages.keySet()));
+
+            //every stage is timed, the stages adding statements report how many
+            long added = 0;
+            for (JsonObject stage : stages.values()) {
+                assertTrue(stage.get("timeMs").getAsNumber().value().doubleValue() >= 0);
+                if (stage.hasKey("triplesAdded")) added += stage.get("triplesAdded").getAsNumber().value().longValue();
+            }
+            assertFalse(stages.get("parsing").hasKey("triplesAdded"));
+            assertEquals(rdf.size(), added);
+            assertEquals(converted, stages.get("convertGenes").get("triples").getAsNumber().value().longValue());
+            assertEquals(rdf.size() - converted, metrics.getTriplesAdded("harmonizeCompartments") + metrics.getTriplesAdded("addMetaboLinks"));
+            assertTrue(metrics.getTriplesAdded("addMetaboLinks") > 0);
+            assertEquals(rdf.size(), stages.get("addMetaboLinks").get("triples").getAsNumber().value().longValue());
+        } finally {
+            Files.delete(report);
+        }
+    }
+
+    @Test
+    public void testOutputFormat() throws IOException {
+        //an absolute URI, relative ones being resolved against the file location when read
+        String baseUri = "http://org.mytest/model";
+        Convertor conv = new Convertor(model, baseUri);
+        conv.run();
+        org.apache.jena.rdf.model.Model expected = conv.getRdfModel();
+
+        Path directory = Files.createTempDirectory("rdf");
+        try {
+            for (OutputFormat format : OutputFormat.values()) {
+                for (String suffix : List.of("", ".gz")) {
+                    String path = directory.resolve("model." + format.getExtension() + suffix).toString();
+                    assertEquals(format == OutputFormat.TURTLE_BLOCKS ? OutputFormat.TURTLE : format, OutputFormat.fromPath(path));
+                    assertEquals(!suffix.isEmpty(), OutputFormat.isCompressed(path));
+
+                    //whole model
+                    try (OutputStream out = OutputFormat.open(path)) {
+                        format.write(out, expected);
+                    }
+                    assertTrue(format + suffix, expected.isIsomorphicWith(RDFDataMgr.loadModel(path)));
+
+                    //statements sent as a stream
+                    try (OutputStream out = OutputFormat.open(path)) {
+                        StreamRDF stream = format.stream(out);
+                        stream.start();
+                        StreamRDFOps.sendGraphToStream(expected.getGraph(), stream);
+                        stream.finish();
+                    }
+                    assertTrue(format + suffix + " stream", expected.isIsomorphicWith(RDFDataMgr.loadModel(path)));
+                }
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testConversionCache() throws XMLStreamException, IOException, InterruptedException {
+        String baseUri = "org.mytest";
+        Path directory = Files.createTempDirectory("cache");
+        Path sbml = directory.resolve("model.xml");
+        Path output = directory.resolve("model.ttl");
+        Path fetched = directory.resolve("fetched.ttl");
+        try {
+            ConversionCache cache = new ConversionCache(directory.resolve("entries").toString(), 1 << 20);
+            new SBMLWriter().write(doc, sbml.toFile());
+            ConversionPipeline pipeline = new ConversionPipeline();
+            String key = ConversionCache.key(sbml.toString(), baseUri, pipeline.getSettingsKey());
+
+            //the settings, URI and content of the model are part of the key
+            pipeline.setAddMetaboLinks(true);
+            assertFalse(key.equals(ConversionCache.key(sbml.toString(), baseUri, pipeline.getSettingsKey())));
+            pipeline.setAddMetaboLinks(false);
+            assertEquals(key, ConversionCache.key(sbml.toString(), baseUri, pipeline.getSettingsKey()));
+            assertFalse(key.equals(ConversionCache.key(sbml.toString(), baseUri + "2", pipeline.getSettingsKey())));
+            r3.removeReactant(0);
+            new SBMLWriter().write(doc, sbml.toFile());
+            String changedKey = ConversionCache.key(sbml.toString(), baseUri, pipeline.getSettingsKey());
+            assertFalse(key.equals(changedKey));
+
+            //a hit restores the same output
+            try (OutputStream out = Files.newOutputStream(output)) {
+                OutputFormat.TURTLE.write(out, pipeline.convert(sbml.toString(), baseUri, new ConversionMetrics()));
+            }
+            assertFalse(cache.fetch(changedKey, fetched.toString()));
+            cache.store(changedKey, output.toString());
+            assertTrue(cache.fetch(changedKey, fetched.toString()));
+            assertTrue(Arrays.equals(Files.readAllBytes(output), Files.readAllBytes(fetched)));
+            assertFalse(cache.fetch(key, fetched.toString()));
+
+            //beyond its size limit, the least recently used entries are removed
+            long size = Files.size(output);
+            cache = new ConversionCache(directory.resolve("lru").toString(), size * 5 / 2);
+            cache.store("first", output.toString());
+            cache.store("second", output.toString());
+            Files.setLastModifiedTime(directory.resolve("lru").resolve("first"), FileTime.fromMillis(1000));
+            Files.setLastModifiedTime(directory.resolve("lru").resolve("second"), FileTime.fromMillis(2000));
+            assertTrue(cache.fetch("first", fetched.toString()));
+            cache.store("third", output.toString());
+            assertTrue(cache.fetch("first", fetched.toString()));
+            assertFalse(cache.fetch("second", fetched.toString()));
+            assertTrue(cache.fetch("third", fetched.toString()));
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testConversionServer() throws XMLStreamException, IOException, InterruptedException {
+        String baseUri = "org.mytest";
+        byte[] sbml = new SBMLWriter().writeSBMLToString(doc).getBytes(StandardCharsets.UTF_8);
+        org.apache.jena.rdf.model.Model expected = ModelFactory.createDefaultModel();
+        new ConversionPipeline().convert(new ByteArrayInputStream(sbml), baseUri, expected, new ConversionMetrics());
+
+        //a single request in progress at once, on an ephemeral port
+        ConversionServer server = new ConversionServer(0, 1, 1, false, PropertyFiller.Engine.SPARQL, null);
+        server.start();
+        String convert = "http://localhost:" + server.getPort() + "/convert?format=ntriples&uri=" + baseUri;
+        try {
+            HttpURLConnection ok = post(convert, sbml);
+            assertEquals(200, ok.getResponseCode());
+            org.apache.jena.rdf.model.Model converted = ModelFactory.createDefaultModel();
+            try (InputStream in = ok.getInputStream()) {
+                converted.read(in, null, "N-TRIPLES");
+            }
+            assertTrue(expected.isIsomorphicWith(converted));
+
+            assertEquals(400, post(convert, "<sbml><model".getBytes(StandardCharsets.UTF_8)).getResponseCode());
+
+            //a request whose body isn't sent yet holds the only slot
+            try (Socket pending = new Socket("localhost", server.getPort())) {
+                OutputStream out = pending.getOutputStream();
+                out.write(("POST /convert?uri=" + baseUri + " HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + sbml.length + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                int status = 200;
+                for (int i = 0; i < 50 && status != 503; i++) {
+                    status = post(convert, sbml).getResponseCode();
+                    if (status != 503) Thread.sleep(100);
+                }
+                assertEquals(503, status);
+                out.write(sbml);
+                out.flush();
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static HttpURLConnection post(String url, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        return connection;
+    }
+
+    @Test
+    public void testStructuredGPA() throws XMLStreamException {
+        String baseUri = "org.mytest";
+        FBCModelPlugin fbcModel = (FBCModelPlugin) model.getPlugin("fbc");
+        for(String id : List.of("g2", "g3")){
+            GeneProduct g = fbcModel.createGeneProduct(id);
+            g.setMetaId(id);
+            g.setLabel(id);
+        }
+        //the same expression, with operands in a different order
+        ((FBCReactionPlugin) r2.getPlugin("fbc")).createGeneProductAssociation().setAssociation(gpa(true, "g1", "g2", "g3"));
+        ((FBCReactionPlugin) r3.getPlugin("fbc")).createGeneProductAssociation().setAssociation(gpa(false, "g1", "g2", "g3"));
+
+        Convertor conv = new Convertor(model, baseUri);
+        conv.setGpaMode(Convertor.GPAMode.BOTH);
+        conv.run();
+        org.apache.jena.rdf.model.Model rdf = conv.getRdfModel();
+        String fbc = model.getPlugin("fbc").getURI()+"#";
+        Property association = rdf.createProperty(fbc+"association");
+        Property geneProductAssociation = rdf.createProperty(fbc+"geneProductAssociation");
+        Resource r1node = rdf.createResource(baseUri+"#r1");
+        Resource r2node = rdf.createResource(baseUri+"#r2");
+        Resource r3node = rdf.createResource(baseUri+"#r3");
+        Resource g1node = rdf.createResource(baseUri+"#g1");
+        Resource g2node = rdf.createResource(baseUri+"#g2");
+        Resource g3node = rdf.createResource(baseUri+"#g3");
+
+        //flat links
+        assertTrue(rdf.contains(r2node, geneProductAssociation, g1node));
+        assertTrue(rdf.contains(r2node, geneProductAssociation, g2node));
+        assertTrue(rdf.contains(r2node, geneProductAssociation, g3node));
+        //single gene product
+        assertTrue(rdf.contains(r1node, association, g1node));
+        //shared or(and(g1,g2),g3)
+        Resource or = rdf.getProperty(r2node, association).getResource();
+        assertTrue(rdf.contains(r3node, association, or));
+        assertTrue(rdf.contains(or, RDF.type, rdf.createResource(fbc+"or")));
+        assertEquals(1, rdf.listSubjectsWithProperty(RDF.type, rdf.createResource(fbc+"or")).toList().size());
+        assertEquals(1, rdf.listSubjectsWithProperty(RDF.type, rdf.createResource(fbc+"and")).toList().size());
+        assertTrue(rdf.contains(or, association, g3node));
+        Resource and = rdf.listSubjectsWithProperty(RDF.type, rdf.createResource(fbc+"and")).next();
+        assertTrue(rdf.contains(or, association, and));
+        assertTrue(rdf.contains(and, association, g1node));
+        assertTrue(rdf.contains(and, association, g2node));
+        assertEquals(2, rdf.listObjectsOfProperty(or, association).toList().size());
+
+        //the structured conversion gives the same statements with the streaming convertor
+        conv = new Convertor(model, baseUri);
+        conv.setGpaMode(Convertor.GPAMode.STRUCTURED);
+        conv.run();
+        org.apache.jena.rdf.model.Model expected = conv.getRdfModel();
+        assertFalse(expected.contains(null, geneProductAssociation));
+        org.apache.jena.rdf.model.Model streamed = ModelFactory.createDefaultModel();
+        StreamingConvertor streamConv = new StreamingConvertor(baseUri, StreamRDFLib.graph(streamed.getGraph()));
+        streamConv.setGpaMode(Convertor.GPAMode.STRUCTURED);
+        streamConv.run(new ByteArrayInputStream(new SBMLWriter().writeSBMLToString(doc).getBytes(StandardCharsets.UTF_8)));
+        assertTrue(expected.isIsomorphicWith(streamed));
+    }
+
+    @Test
+    public void testModelSnapshot() throws IOException {
+        String baseUri = "org.mytest";
+        FBCModelPlugin fbcModel = (FBCModelPlugin) model.getPlugin("fbc");
+        for(String id : List.of("g2", "g3")){
+            GeneProduct g = fbcModel.createGeneProduct(id);
+            g.setMetaId(id);
+            g.setLabel(id);
+        }
+        ((FBCReactionPlugin) r2.getPlugin("fbc")).createGeneProductAssociation().setAssociation(gpa(true, "g1", "g2", "g3"));
+
+        Path snapshot = Files.createTempFile("model", ".snapshot");
+        try {
+            ModelSnapshot.write(model, "hash", snapshot);
+            assertEquals(null, ModelSnapshot.read(snapshot, "otherHash"));
+            Model loaded = ModelSnapshot.read(snapshot, "hash");
+            assertEquals(model.getSpeciesCount(), loaded.getSpeciesCount());
+            assertEquals(model.getReactionCount(), loaded.getReactionCount());
+
+            //the loaded model converts into the same statements
+            for(Convertor.GPAMode mode : List.of(Convertor.GPAMode.FLAT, Convertor.GPAMode.BOTH)){
+                Convertor conv = new Convertor(model, baseUri);
+                conv.setGpaMode(mode);
+                conv.run();
+                Convertor loadedConv = new Convertor(loaded, baseUri);
+                loadedConv.setGpaMode(mode);
+                loadedConv.run();
+                assertEquals(conv.getRdfModel().size(), loadedConv.getRdfModel().size());
+                assertTrue(conv.getRdfModel().isIsomorphicWith(loadedConv.getRdfModel()));
+            }
+            //and selects the same subset
+            Convertor conv = new Convertor(model, baseUri);
+            conv.setSubset(new SubsetFilter().setSBOTerms(List.of("SBO:0000176")).setCompartments(List.of("cmp1")));
+            conv.run();
+            Convertor loadedConv = new Convertor(loaded, baseUri);
+            loadedConv.setSubset(new SubsetFilter().setSBOTerms(List.of("SBO:0000176")).setCompartments(List.of("cmp1")));
+            loadedConv.run();
+            assertTrue(conv.getRdfModel().isIsomorphicWith(loadedConv.getRdfModel()));
+        } finally {
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public void testCompactModel() {
+        String baseUri = "org.mytest";
+        FBCModelPlugin fbcModel = (FBCModelPlugin) model.getPlugin("fbc");
+        for(String id : List.of("g2", "g3")){
+            GeneProduct g = fbcModel.createGeneProduct(id);
+            g.setMetaId(id);
+            g.setLabel(id);
+        }
+        ((FBCReactionPlugin) r2.getPlugin("fbc")).createGeneProductAssociation().setAssociation(gpa(true, "g1", "g2", "g3"));
+        ((FBCReactionPlugin) r3.getPlugin("fbc")).createGeneProductAssociation().setAssociation(gpa(false, "g1", "g2", "g3"));
+        Set<String> sideCompounds = Set.of("c1", "c2");
+
+        for(Convertor.GPAMode mode : Convertor.GPAMode.values()){
+            //conversion and enhancements of the rdf model
+            Convertor conv = new Convertor(model, baseUri);
+            conv.setGpaMode(mode);
+            conv.run();
+            org.apache.jena.rdf.model.Model expected = conv.getRdfModel();
+            PropertyFiller.importSideCompoundsIndexed(expected, sideCompounds);
+            PropertyFiller.harmonizeCompartmentsIndexed(expected, false, true);
+            PropertyFiller.addMetaboLinksIndexed(expected, false);
+            PropertyFiller.addDerivesClosure(expected, 2);
+
+            //same statements from the compact model
+            CompactModel compact = CompactModel.fromModel(model, baseUri, new SubsetFilter());
+            assertEquals(8, compact.getSpeciesCount());
+            assertEquals(2, compact.setSideCompounds(sideCompounds));
+            org.apache.jena.rdf.model.Model rdf = ModelFactory.createDefaultModel();
+            StreamRDF out = StreamRDFLib.graph(rdf.getGraph());
+            out.start();
+            compact.write(out, mode);
+            compact.addCompartmentLinks(out, false, true);
+            compact.addMetaboLinks(out, false);
+            compact.addDerivesClosure(out, 2);
+            out.finish();
+            assertEquals(expected.size(), rdf.size());
+            assertTrue(expected.isIsomorphicWith(rdf));
+            assertEquals(expected.getNsPrefixMap(), rdf.getNsPrefixMap());
+        }
+
+        //and selects the same subset
+        SubsetFilter subset = new SubsetFilter().setCompartments(List.of("cmp2"));
+        Convertor conv = new Convertor(model, baseUri);
+        conv.setSubset(subset);
+        conv.run();
+        CompactModel compact = CompactModel.fromModel(model, baseUri, subset);
+        assertEquals(4, compact.getReactionCount());
+        org.apache.jena.rdf.model.Model rdf = ModelFactory.createDefaultModel();
+        compact.write(StreamRDFLib.graph(rdf.getGraph()), Convertor.GPAMode.FLAT);
+        assertTrue(conv.getRdfModel().isIsomorphicWith(rdf));
+    }
+
+    // or(and(g1,g2),g3), with the operands in reverse order if not ordered
+    private static Association gpa(boolean ordered, String g1, String g2, String g3) {
+        And and = new And(3, 2);
+        Or or = new Or(3, 2);
+        List<Association> andOperands = List.of(geneRef(g1), geneRef(g2));
+        List<Association> orOperands = List.of(and, geneRef(g3));
+        for(int i = 0; i < 2; i++) and.addAssociation(andOperands.get(ordered ? i : 1 - i));
+        for(int i = 0; i < 2; i++) or.addAssociation(orOperands.get(ordered ? i : 1 - i));
+        return or;
+    }
+
+    private static GeneProductRef geneRef(String geneProduct) {
+        GeneProductRef ref = new GeneProductRef(3, 2);
+        ref.setGeneProduct(geneProduct);
+        return ref;
+    }
+
+    @Test
+    public void testAggregator(){
+        a1.addCVTerm(new CVTerm(CVTerm.Qualifier.BQB_IS, "http://identifiers.org/chebi/CHEBI:1"));
+        b1.addCVTerm(new CVTerm(CVTerm.Qualifier.BQB_IS, "http://identifiers.org/chebi/CHEBI:2"));
+        Convertor first = new Convertor(model, "http://org.first");
+        first.run();
+        Convertor second = new Convertor(model, "http://org.second");
+        second.run();
+        Convertor third = new Convertor(model, "http://org.third");
+        third.run();
+
+        org.apache.jena.rdf.model.Model links = ModelFactory.createDefaultModel();
+        Aggregator aggregator = new Aggregator(StreamRDFLib.graph(links.getGraph()));
+        assertEquals(0, aggregator.add("http://org.first", first.getRdfModel().getGraph()));
+        //a1 is also annotated with SBO_0000299 in initModel, hence linked twice
+        assertEquals(3, aggregator.add("http://org.second", second.getRdfModel().getGraph()));
+        assertEquals(0, aggregator.add("http://org.first", first.getRdfModel().getGraph()));
+        assertEquals(3, aggregator.add("http://org.third", third.getRdfModel().getGraph()));
+        assertEquals(4, links.size());
+        assertTrue(links.contains(links.createResource("http://org.second#a1"), SKOS.exactMatch, links.createResource("http://org.first#a1")));
+        assertTrue(links.contains(links.createResource("http://org.second#b1"), SKOS.exactMatch, links.createResource("http://org.first#b1")));
+        assertTrue(links.contains(links.createResource("http://org.third#a1"), SKOS.exactMatch, links.createResource("http://org.first#a1")));
+        assertEquals(3, aggregator.getIdentifierCount());
+        assertEquals(4, aggregator.getModelCount());
+
+        //the species of the later models are related through the transitive and symmetric skos:exactMatch
+        String related = "ASK { <http://org.second#a1> (<" + SKOS.exactMatch.getURI() + ">|^<" + SKOS.exactMatch.getURI() + ">)+ <http://org.third#a1> }";
+        try (QueryExecution ask = QueryExecutionFactory.create(related, links)) {
+            assertTrue(ask.execAsk());
+        }
+    }
+
+    @Test
+    public void testModelDiff(){
+        String baseUri = "org.mytest";
+        SBMLDocument newDoc = doc.clone();
+        Model newModel = newDoc.getModel();
+        ((FBCModelPlugin) newModel.getPlugin("fbc")).getGeneProduct("g1").setLabel("g1"); //not copied by JSBML clone
+        newModel.getReaction("r1").setName("renamed");
+        newModel.removeReaction("r3");
+        Species f = newModel.createSpecies("f", "F", newModel.getCompartment("cmp1"));f.setMetaId(f.getId());
+
+        RDFChangesCollector changes = new RDFChangesCollector();
+        ModelDiff diff = new ModelDiff(baseUri);
+        diff.setSkolemize(true);
+        diff.diff(model, newModel, changes);
+        assertEquals(3, diff.getChangedElements());
+
+        //applying the patch to the previous skolemized conversion gives the new conversion
+        Convertor previous = new Convertor(model, baseUri);
+        previous.setSkolemize(true);
+        previous.run();
+        Convertor current = new Convertor(newModel, baseUri);
+        current.setSkolemize(true);
+        current.run();
+        DatasetGraph store = DatasetGraphFactory.createTxnMem();
+        Txn.executeWrite(store, () -> previous.getRdfModel().getGraph().find().forEachRemaining(store.getDefaultGraph()::add));
+        RDFPatchOps.applyChange(store, changes.getRDFPatch());
+        Graph expected = current.getRdfModel().getGraph();
+        assertFalse(expected.find().filterKeep(t -> t.getSubject().isBlank() || t.getObject().isBlank()).hasNext());
+        Txn.executeRead(store, () -> {
+            Graph patched = store.getDefaultGraph();
+            assertEquals(expected.size(), patched.size());
+            expected.find().forEachRemaining(t -> assertTrue(t.toString(), patched.contains(t)));
+        });
+
+        //without skolemization, the removed speciesRefs of r3 can't be deleted: the diff is rejected and aborted
+        RDFChangesCollector rejected = new RDFChangesCollector();
+        try {
+            new ModelDiff(baseUri).diff(model, newModel, rejected);
+            assertTrue("blank nodes changes must be rejected", false);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("reaction:r3"));
+        }
+        assertTrue(RDFPatchOps.str(rejected.getRDFPatch()).contains("TA"));
+
+        //unchanged speciesRefs are kept
+        newModel.addReaction(model.getReaction("r3").clone());
+        diff = new ModelDiff(baseUri);
+        diff.diff(model, newModel, new RDFChangesCollector());
+        assertEquals(2, diff.getChangedElements());
+        assertEquals(6, diff.getAdded());
+        assertEquals(1, diff.getDeleted());
+    }
 }
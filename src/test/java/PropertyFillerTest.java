@@ -1,3 +1,4 @@
+import org.apache.jena.datatypes.BaseDatatype;
 import org.apache.jena.rdf.model.*;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
@@ -8,8 +9,13 @@ import org.junit.rules.ExpectedException;
 import vocabulary.SBMLRDF;
 
 import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
@@ -220,6 +226,147 @@ public class PropertyFillerTest {
         assertTrue(rdf2.contains(a2,derivesInto, a1));
     }
 
+    @Test
+    public void testMetaboLinksIndexed(){
+        Model sparql = ModelFactory.createDefaultModel().add(rdf);
+        PropertyFiller.addMetaboLinks(sparql,false);
+        PropertyFiller.addMetaboLinksIndexed(rdf,false);
+
+        Property derivesInto = ResourceFactory.createProperty(SBMLRDF.SIOURI, "SIO_000246");
+        assertEquals(11,rdf.listStatements(null, derivesInto, (RDFNode) null).toList().size());
+        assertTrue(rdf.isIsomorphicWith(sparql));
+    }
+
+    @Test
+    public void testMetaboLinksIndexedWithSide(){
+        ArrayList<String> sideCompoundsIds = new ArrayList<>();
+        sideCompoundsIds.add("b1");
+        sideCompoundsIds.add("b2");
+        PropertyFiller.importSideCompounds(rdf,sideCompoundsIds);
+        Model sparql = ModelFactory.createDefaultModel().add(rdf);
+        PropertyFiller.addMetaboLinks(sparql,false,PropertyFiller.Engine.SPARQL);
+        PropertyFiller.addMetaboLinks(rdf,false,PropertyFiller.Engine.INDEXED);
+
+        Property derivesInto = ResourceFactory.createProperty(SBMLRDF.SIOURI, "SIO_000246");
+        assertEquals(9,rdf.listStatements(null, derivesInto, (RDFNode) null).toList().size());
+        assertFalse(rdf.contains(a1,derivesInto, b1));
+        assertTrue(rdf.isIsomorphicWith(sparql));
+    }
+
+    @Test
+    public void testDerivesClosure(){
+        //one reaction: same as the direct links, with the transitive property
+        Model direct = ModelFactory.createDefaultModel().add(rdf);
+        PropertyFiller.addMetaboLinksIndexed(direct,true);
+        Model closure = ModelFactory.createDefaultModel().add(rdf);
+        assertEquals(11, PropertyFiller.addDerivesClosure(closure,1));
+        assertTrue(closure.isIsomorphicWith(direct));
+
+        //two reactions
+        assertEquals(20, PropertyFiller.addDerivesClosure(rdf,2));
+        assertTrue(rdf.contains(a1,SBMLRDF.DERIVES_INTO, d));
+        assertTrue(rdf.contains(a1,SBMLRDF.DERIVES_INTO, b2));
+        assertFalse(rdf.contains(a1,SBMLRDF.DERIVES_INTO, e));
+        assertFalse(rdf.contains(a1,SBMLRDF.DERIVES_INTO, a1));
+        assertFalse(rdf.contains(d,SBMLRDF.DERIVES_INTO, a1));
+
+        //unbounded, ignoring side compounds
+        ArrayList<String> sideCompoundsIds = new ArrayList<>();
+        sideCompoundsIds.add("c1");
+        sideCompoundsIds.add("c2");
+        PropertyFiller.importSideCompoundsIndexed(rdf,sideCompoundsIds);
+        Model side = ModelFactory.createDefaultModel().add(rdf).remove(rdf.listStatements(null, SBMLRDF.DERIVES_INTO, (RDFNode) null));
+        PropertyFiller.addDerivesClosure(side,10);
+        assertTrue(side.contains(a1,SBMLRDF.DERIVES_INTO, b2));
+        assertFalse(side.contains(a1,SBMLRDF.DERIVES_INTO, d));
+        assertFalse(side.contains(a1,SBMLRDF.DERIVES_INTO, e));
+    }
+
+    @Test
+    public void testEnhancementScheduler() throws InterruptedException {
+        List<String> sideCompoundsIds = List.of("c1","c2");
+        Model sequential = ModelFactory.createDefaultModel().add(rdf);
+        Model concurrent = ModelFactory.createDefaultModel().add(rdf);
+        Map<Model, ConversionMetrics> metrics = new HashMap<>();
+        for(Model model : List.of(sequential, concurrent)){
+            metrics.put(model, new ConversionMetrics());
+            //each stage checks it doesn't see the statements of the stages it doesn't depend on
+            new EnhancementScheduler(metrics.get(model), message -> {})
+                    .add("harmonizeCompartments", "", m -> PropertyFiller.harmonizeCompartmentsIndexed(m,false,false))
+                    .add("importSideCompounds", "", m -> PropertyFiller.importSideCompoundsIndexed(m,sideCompoundsIds))
+                    .add("addMetaboLinks", "", m -> {
+                        assertTrue(m.contains(null, RDF.type, SBMLRDF.SIDEREACTANT));
+                        if(model == concurrent) assertFalse(m.contains(null, SBMLRDF.IS_VARIANT_OF, (RDFNode) null));
+                        PropertyFiller.addMetaboLinksIndexed(m,false);
+                    }, "importSideCompounds")
+                    .add("derivesClosure", "", m -> {
+                        if(model == concurrent) assertFalse(m.contains(null, SBMLRDF.IMMEDIATELY_DERIVES_INTO, (RDFNode) null));
+                        PropertyFiller.addDerivesClosure(m,10);
+                    }, "importSideCompounds")
+                    //statements already in the model are not counted
+                    .add("retype", "", m -> m.add(a1, RDF.type, SBMLRDF.SPECIE).add(a1, RDF.type, SBMLRDF.SIDEREACTANT), "importSideCompounds")
+                    .run(model, model == concurrent ? 4 : 1);
+        }
+        for(String stage : List.of("harmonizeCompartments", "importSideCompounds", "addMetaboLinks", "derivesClosure", "retype")){
+            assertEquals(stage, metrics.get(sequential).getTriplesAdded(stage), metrics.get(concurrent).getTriplesAdded(stage));
+        }
+        assertEquals(sequential.size() - rdf.size(), metrics.get(concurrent).getTriplesAdded("harmonizeCompartments")
+                + metrics.get(concurrent).getTriplesAdded("importSideCompounds") + metrics.get(concurrent).getTriplesAdded("addMetaboLinks")
+                + metrics.get(concurrent).getTriplesAdded("derivesClosure") + metrics.get(concurrent).getTriplesAdded("retype"));
+        assertEquals(sequential.size(), concurrent.size());
+        assertTrue(sequential.isIsomorphicWith(concurrent));
+        assertEquals(sequential.getNsPrefixMap(), concurrent.getNsPrefixMap());
+        assertFalse(concurrent.contains(a1,SBMLRDF.DERIVES_INTO, d));
+        assertTrue(concurrent.contains(a1,SBMLRDF.IS_VARIANT_OF, a2));
+
+        exception.expect(IllegalArgumentException.class);
+        new EnhancementScheduler(new ConversionMetrics(), message -> {}).add("addMetaboLinks", "", m -> {}, "importSideCompounds");
+    }
+
+    @Test
+    public void testGraphExport() throws IOException {
+        PropertyFiller.importSideCompoundsIndexed(rdf,List.of("b1","b2"));
+        Path file = Files.createTempFile("network", ".csr");
+        try {
+            GraphExport.fromGraph(rdf.getGraph()).write(file);
+            GraphExport graph = GraphExport.read(file);
+            assertEquals(8, graph.getSpeciesCount());
+            assertEquals(6, graph.getReactionCount());
+
+            //bipartite graph
+            int r1Id = 0;
+            while(!graph.getReaction(r1Id).equals(r1.getURI())) r1Id++;
+            int[] offsets = graph.getParticipantOffsets();
+            assertEquals(3, offsets[r1Id + 1] - offsets[r1Id]);
+            assertFalse(graph.isReversible(r1Id));
+            List<String> r1Participants = new ArrayList<>();
+            for(int p = offsets[r1Id]; p < offsets[r1Id + 1]; p++){
+                String species = graph.getSpecies(graph.getParticipants()[p]);
+                r1Participants.add(species);
+                if(species.equals(a1.getURI())){
+                    assertEquals(GraphExport.REACTANT, graph.getRoles()[p]);
+                    assertEquals(2.0, graph.getStoichiometry()[p], 0.0);
+                }
+                if(species.equals(b1.getURI())) assertEquals(GraphExport.SIDE_PRODUCT, graph.getRoles()[p]);
+            }
+            assertTrue(r1Participants.containsAll(List.of(a1.getURI(), b1.getURI(), c1.getURI())));
+
+            //compound graph: the same links as addMetaboLinks, side compounds excluded
+            PropertyFiller.addMetaboLinksIndexed(rdf,false);
+            Property derivesInto = ResourceFactory.createProperty(SBMLRDF.SIOURI, "SIO_000246");
+            assertEquals(9, graph.getLinkTargets().length);
+            for(int s = 0; s < graph.getSpeciesCount(); s++){
+                for(int l = graph.getLinkOffsets()[s]; l < graph.getLinkOffsets()[s + 1]; l++){
+                    Resource source = rdf.createResource(graph.getSpecies(s));
+                    Resource target = rdf.createResource(graph.getSpecies(graph.getLinkTargets()[l]));
+                    assertTrue(rdf.contains(source, derivesInto, target));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     @Test
     public void testHarmonizeCompartment(){
         PropertyFiller fill = new PropertyFiller();
@@ -239,6 +386,25 @@ public class PropertyFillerTest {
 
     }
 
+    @Test
+    public void testHarmonizeCompartmentIndexed(){
+        Model sparql = ModelFactory.createDefaultModel().add(rdf);
+        PropertyFiller.harmonizeCompartments(sparql,false);
+        PropertyFiller.harmonizeCompartmentsIndexed(rdf,false,false);
+        assertTrue(rdf.isIsomorphicWith(sparql));
+
+        //normalized names
+        Property isComparableTo = ResourceFactory.createProperty(SBMLRDF.SIOURI, "SIO_000272");
+        rdf.add(e, SBMLRDF.NAME, " d");
+        PropertyFiller.harmonizeCompartmentsIndexed(rdf,false,false);
+        assertFalse(rdf.contains(d,isComparableTo, e));
+        rdf.add(d, SBMLRDF.NAME, "D ");
+        PropertyFiller.harmonizeCompartmentsIndexed(rdf,false,true);
+        assertTrue(rdf.contains(d,isComparableTo, e));
+        assertTrue(rdf.contains(e,isComparableTo, d));
+        assertEquals(8,rdf.listStatements(null, isComparableTo, (RDFNode) null).toList().size());
+    }
+
     @Test
     public void testImportSideCompounds(){
         ArrayList<String> sideCompoundsIds = new ArrayList<>();
@@ -254,4 +420,31 @@ public class PropertyFillerTest {
         assertTrue(labels.contains("b1"));
         assertTrue(labels.contains("b2"));
     }
+
+    @Test
+    public void testImportSideCompoundsIndexed(){
+        ArrayList<String> sideCompoundsIds = new ArrayList<>();
+        sideCompoundsIds.add("b1");
+        sideCompoundsIds.add("b2");
+        sideCompoundsIds.add("c1");
+        sideCompoundsIds.add("unknown");
+        Model sparql = ModelFactory.createDefaultModel().add(rdf);
+        Model typed = ModelFactory.createDefaultModel().add(rdf);
+        PropertyFiller.importSideCompounds(sparql,sideCompoundsIds);
+        PropertyFiller.importSideCompoundsIndexed(rdf,sideCompoundsIds);
+
+        assertEquals(2,rdf.listSubjectsWithProperty(RDF.type,SBMLRDF.SIDEREACTANT).toList().size());
+        assertEquals(3,rdf.listSubjectsWithProperty(RDF.type,SBMLRDF.SIDEPRODUCT).toList().size());
+        assertTrue(rdf.isIsomorphicWith(sparql));
+
+        //labels that are not strings are not matched by any engine
+        typed.removeAll(b1, RDFS.label, null).add(b1, RDFS.label, typed.createTypedLiteral("b1", new BaseDatatype("http://example.org/identifier")));
+        typed.removeAll(b2, RDFS.label, null).add(b2, RDFS.label, typed.createLiteral("b2", "en"));
+        Model typedSparql = ModelFactory.createDefaultModel().add(typed);
+        PropertyFiller.importSideCompounds(typedSparql,sideCompoundsIds);
+        PropertyFiller.importSideCompoundsIndexed(typed,sideCompoundsIds);
+        assertTrue(typed.isIsomorphicWith(typedSparql));
+        assertTrue(typed.listSubjectsWithProperty(RDF.type,SBMLRDF.SIDEREACTANT).toList().size()
+                + typed.listSubjectsWithProperty(RDF.type,SBMLRDF.SIDEPRODUCT).toList().size() < 5);
+    }
 }